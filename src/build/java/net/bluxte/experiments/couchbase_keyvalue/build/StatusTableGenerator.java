@@ -0,0 +1,281 @@
+package net.bluxte.experiments.couchbase_keyvalue.build;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Generates {@code KeyValueStatus} from its template and the protocol status definitions, so that enum
+ * constants, the dense lookup table, the switch resolver and the category flags table can't drift apart.
+ *
+ * Runs in the {@code generate-sources} phase as a single-file source program (JDK 11+ for the build,
+ * generated code still targets the project's Java version):
+ * <pre>
+ * java StatusTableGenerator.java &lt;definitions&gt; &lt;categories&gt; &lt;template&gt; &lt;output&gt;
+ * </pre>
+ * where {@code categories} is the source of {@code StatusCategory}, whose constants are the only valid
+ * category names in definitions.
+ *
+ * Template lines consisting only of a {@code //@@NAME@@} marker are replaced by the generated section of
+ * that name, at the marker's indentation.
+ */
+public class StatusTableGenerator {
+
+    private static final String UNKNOWN = "UNKNOWN";
+
+    // Size of the dense lookup table: codes above it resolve to UNKNOWN with valueOfLookupArray
+    private static final int DENSE_TABLE_SIZE = 0x100;
+
+    // Largest code: 0xffff is -1 as a short, and would alias UNKNOWN
+    private static final int MAX_CODE = 0xfffe;
+
+    private static final Pattern STATUS = Pattern.compile("(\\w+)\\s+(-1|0x[0-9a-fA-F]+)\\s+(?:([A-Z_]+(?:,[A-Z_]+)*)\\s+)?\"((?:[^\"\\\\]|\\\\.)*)\"");
+    private static final Pattern MARKER = Pattern.compile("(\\s*)//@@(\\w+)@@\\s*");
+    private static final Pattern CATEGORY = Pattern.compile("\\s*public static final int (\\w+)\\s*=.*");
+
+    static class Status {
+        final String name;
+        final int code;
+        final String description;
+        final List<String> categories;
+        final String section;
+        final boolean separated;
+
+        Status(String name, int code, String description, List<String> categories, String section, boolean separated) {
+            this.name = name;
+            this.code = code;
+            this.description = description;
+            this.categories = categories;
+            this.section = section;
+            this.separated = separated;
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 4) {
+            System.err.println("Usage: StatusTableGenerator <definitions> <categories> <template> <output>");
+            System.exit(2);
+        }
+
+        List<Status> statuses = parse(Paths.get(args[0]), categories(Paths.get(args[1])));
+
+        Map<String, List<String>> sections = new HashMap<>();
+        sections.put("CONSTANTS", constants(statuses));
+        sections.put("CODE2STATUS", code2status(statuses));
+        sections.put("SWITCH_CASES", switchCases(statuses));
+        sections.put("CODE2FLAGS", code2flags(statuses));
+
+        Path output = Paths.get(args[3]);
+        Files.createDirectories(output.getParent());
+        Files.write(output, expand(Paths.get(args[0]), Paths.get(args[2]), sections), StandardCharsets.UTF_8);
+    }
+
+    //---------------------------------------------------------------------------------------------
+    // Definitions
+
+    static List<Status> parse(Path file, Set<String> validCategories) throws IOException {
+        List<Status> result = new ArrayList<>();
+        Map<String, Integer> names = new HashMap<>();
+        Map<Integer, String> codes = new HashMap<>();
+        String section = null;
+        boolean separated = false;
+
+        int lineNumber = 0;
+        for (String line: Files.readAllLines(file, StandardCharsets.UTF_8)) {
+            lineNumber++;
+            line = line.trim();
+            if (line.startsWith("##")) {
+                section = line.substring(2).trim();
+                continue;
+            }
+            if (line.isEmpty()) {
+                separated = !result.isEmpty();
+                continue;
+            }
+            if (line.startsWith("#")) {
+                continue;
+            }
+
+            Matcher m = STATUS.matcher(line);
+            if (!m.matches()) {
+                throw error(file, lineNumber, "invalid status definition");
+            }
+
+            String name = m.group(1);
+            int code = -1;
+            if (!m.group(2).equals("-1")) {
+                // Parsed as a BigInteger so that long values are reported rather than overflowing
+                BigInteger value = new BigInteger(m.group(2).substring(2), 16);
+                if (value.compareTo(BigInteger.valueOf(MAX_CODE)) > 0) {
+                    throw error(file, lineNumber, String.format("code %s is out of the 0x0000-0x%04x range", m.group(2), MAX_CODE));
+                }
+                code = value.intValue();
+            }
+
+            if (code == -1 && !name.equals(UNKNOWN)) {
+                throw error(file, lineNumber, "only " + UNKNOWN + " can have code -1");
+            }
+            if (names.put(name, code) != null) {
+                throw error(file, lineNumber, "duplicate status " + name);
+            }
+            String previous = codes.put(code, name);
+            if (previous != null) {
+                throw error(file, lineNumber, String.format("code 0x%02x already used by %s", code, previous));
+            }
+
+            List<String> categories = m.group(3) == null
+                    ? Collections.<String>emptyList()
+                    : Arrays.asList(m.group(3).split(","));
+            if (code == -1 && !categories.isEmpty()) {
+                throw error(file, lineNumber, UNKNOWN + " can't have categories");
+            }
+            for (String category: categories) {
+                if (!validCategories.contains(category)) {
+                    throw error(file, lineNumber, "unknown category " + category + ", expected one of " + validCategories);
+                }
+            }
+
+            result.add(new Status(name, code, m.group(4), categories, section, separated));
+            section = null;
+            separated = false;
+        }
+
+        if (!result.isEmpty() && result.get(0).name.equals(UNKNOWN) && result.get(0).code == -1) {
+            return result;
+        }
+        throw new IllegalArgumentException(file + ": the first status must be " + UNKNOWN + " with code -1");
+    }
+
+    /**
+     * Names of the {@code public static final int} flags declared in the {@code StatusCategory} source.
+     */
+    static Set<String> categories(Path file) throws IOException {
+        Set<String> result = new TreeSet<>();
+        for (String line: Files.readAllLines(file, StandardCharsets.UTF_8)) {
+            Matcher m = CATEGORY.matcher(line);
+            if (m.matches()) {
+                result.add(m.group(1));
+            }
+        }
+        if (result.isEmpty()) {
+            throw new IllegalArgumentException(file + ": no category flags found");
+        }
+        return result;
+    }
+
+    private static IllegalArgumentException error(Path file, int line, String message) {
+        return new IllegalArgumentException(file + ":" + line + ": " + message);
+    }
+
+    //---------------------------------------------------------------------------------------------
+    // Generated sections
+
+    static List<String> constants(List<Status> statuses) {
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < statuses.size(); i++) {
+            Status status = statuses.get(i);
+            if (status.separated) {
+                lines.add("");
+            }
+            if (status.section != null) {
+                lines.add("/* " + status.section + " */");
+            }
+            String code = status.code == -1 ? "-1" : String.format("0x%02x", status.code);
+            String separator = i == statuses.size() - 1 ? ";" : ",";
+            lines.add(String.format("%s((short) %s,", status.name, code));
+            if (status.categories.isEmpty()) {
+                lines.add(String.format("        \"%s\")%s", status.description, separator));
+            } else {
+                lines.add(String.format("        \"%s\",", status.description));
+                lines.add(String.format("        %s)%s", flags(status), separator));
+            }
+        }
+        return lines;
+    }
+
+    static List<String> code2status(List<Status> statuses) {
+        String[] table = new String[DENSE_TABLE_SIZE];
+        for (Status status: statuses) {
+            if (status.code >= 0 && status.code < DENSE_TABLE_SIZE) {
+                table[status.code] = status.name;
+            }
+        }
+
+        List<String> lines = new ArrayList<>();
+        for (int code = 0; code < table.length; code++) {
+            lines.add(String.format("/* 0x%02x */ %s,", code, table[code] == null ? UNKNOWN : table[code]));
+        }
+        return lines;
+    }
+
+    static List<String> switchCases(List<Status> statuses) {
+        List<String> lines = new ArrayList<>();
+        for (Status status: statuses) {
+            if (status.code != -1) {
+                // Codes above 0x7fff are negative shorts, and need a cast to be valid case labels
+                String label = status.code > Short.MAX_VALUE ? "(short) 0x%04x" : "0x%02x";
+                lines.add(String.format("case " + label + ": return %s;", status.code, status.name));
+            }
+        }
+        return lines;
+    }
+
+    static List<String> code2flags(List<Status> statuses) {
+        List<String> lines = new ArrayList<>();
+        for (Status status: statuses) {
+            if (!status.categories.isEmpty()) {
+                lines.add(String.format("code2flags[0x%02x] = (byte) (%s);", status.code, flags(status)));
+            }
+        }
+        return lines;
+    }
+
+    private static String flags(Status status) {
+        StringBuilder sb = new StringBuilder();
+        for (String category: status.categories) {
+            if (sb.length() > 0) {
+                sb.append(" | ");
+            }
+            sb.append("StatusCategory.").append(category);
+        }
+        return sb.toString();
+    }
+
+    //---------------------------------------------------------------------------------------------
+    // Template expansion
+
+    static List<String> expand(Path definitions, Path template, Map<String, List<String>> sections) throws IOException {
+        List<String> result = new ArrayList<>();
+        result.add(String.format("// Generated by StatusTableGenerator from %s and the %s template, do not edit.",
+                definitions.getFileName(), template.getFileName()));
+        for (String line: Files.readAllLines(template, StandardCharsets.UTF_8)) {
+            Matcher m = MARKER.matcher(line);
+            if (!m.matches()) {
+                result.add(line);
+                continue;
+            }
+
+            List<String> section = sections.get(m.group(2));
+            if (section == null) {
+                throw new IllegalArgumentException(template + ": unknown section " + m.group(2));
+            }
+            for (String sectionLine: section) {
+                result.add(sectionLine.isEmpty() ? "" : m.group(1) + sectionLine);
+            }
+        }
+        return result;
+    }
+}
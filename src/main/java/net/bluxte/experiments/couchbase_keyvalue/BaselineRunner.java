@@ -0,0 +1,328 @@
+package net.bluxte.experiments.couchbase_keyvalue;
+
+import org.apache.commons.math3.stat.StatUtils;
+import org.apache.commons.math3.stat.inference.TTest;
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.BenchmarkResult;
+import org.openjdk.jmh.results.IterationResult;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Records benchmark results as JSON baselines, and compares new runs against them as a performance gate.
+ *
+ * <pre>
+ * BaselineRunner record  &lt;baseline dir&gt; [benchmark regexp]
+ * BaselineRunner compare [--allow-missing-baseline] &lt;baseline dir&gt; [benchmark regexp]
+ * </pre>
+ *
+ * Baselines are stored in one file per environment (JVM, JDK version, OS, architecture, CPU count and a
+ * hash of the JVM arguments given with {@code -Dbaseline.jvmArgs}) in the baseline directory, with the raw
+ * per-iteration scores and allocation rates of each benchmark and parameter set. Recording merges into an
+ * existing baseline, so that it can be built one benchmark at a time.
+ *
+ * Only the arguments of {@code baseline.jvmArgs} are part of the environment key. Forks also inherit the
+ * arguments of the runner's JVM, such as IDE agents, debug ports or heap sizes: they are recorded in the
+ * baseline file, but don't change its name, so that identical machines share baselines.
+ *
+ * Comparing runs Welch's t-test on the iteration samples of each benchmark, and reports a regression if
+ * the difference is significant (p &lt; {@code baseline.alpha}, 0.01 by default) and larger than
+ * {@code baseline.threshold} (5% by default), or if allocation per operation grows by more than a few
+ * bytes. The exit status is 1 if there's any regression, or if the baseline file or the baseline of a
+ * benchmark is missing, unless {@code --allow-missing-baseline} is given: a gate that can't compare
+ * must not pass.
+ */
+public class BaselineRunner {
+
+    private static final String DEFAULT_INCLUDE = "ValueOfBenchmark|BoxingBenchmark|WorkloadBenchmark";
+
+    private static final String ALLOC_NORM = "gc.alloc.rate.norm";
+
+    // Allocation increases below this are measurement noise (e.g. a TLAB refill spread over operations)
+    private static final double ALLOC_TOLERANCE_BYTES = 4.0;
+
+    private static final String ALLOW_MISSING_BASELINE = "--allow-missing-baseline";
+
+    // Arguments added to forked JVMs, space-separated
+    private static final List<String> JVM_ARGS = jvmArgs(System.getProperty("baseline.jvmArgs", ""));
+
+    public static void main(String[] args) throws RunnerException, IOException {
+        List<String> argList = new ArrayList<>(Arrays.asList(args));
+        boolean allowMissing = argList.remove(ALLOW_MISSING_BASELINE);
+        args = argList.toArray(new String[0]);
+        if (args.length < 2 || !(args[0].equals("record") || args[0].equals("compare"))) {
+            System.err.println("Usage: BaselineRunner (record|compare) [" + ALLOW_MISSING_BASELINE + "] "
+                    + "<baseline dir> [benchmark regexp]");
+            System.exit(2);
+        }
+
+        Path dir = Paths.get(args[1]);
+        String include = args.length > 2 ? args[2] : DEFAULT_INCLUDE;
+
+        Collection<RunResult> results = run(include);
+        if (results.isEmpty()) {
+            System.err.println("No benchmark matches " + include);
+            System.exit(2);
+        }
+        Map<String, Object> environment = environment(results.iterator().next().getParams());
+        Path file = dir.resolve(environmentKey(environment) + ".json");
+
+        if (args[0].equals("record")) {
+            record(file, environment, results);
+        } else if (compare(file, results, allowMissing) > 0) {
+            System.exit(1);
+        }
+    }
+
+    static Collection<RunResult> run(String include) throws RunnerException {
+        Options opts = new OptionsBuilder()
+                .include(include)
+                .jvmArgsAppend(JVM_ARGS.toArray(new String[0]))
+                .addProfiler(GCProfiler.class)
+                .forks(2)
+                .warmupIterations(5)
+                .warmupTime(TimeValue.seconds(1))
+                .measurementIterations(10)
+                .measurementTime(TimeValue.seconds(1))
+                .build();
+
+        return new Runner(opts).run();
+    }
+
+    //---------------------------------------------------------------------------------------------
+    // Baseline files
+
+    static Map<String, Object> environment(BenchmarkParams params) {
+        Map<String, Object> env = new LinkedHashMap<>();
+        env.put("vmName", params.getVmName());
+        env.put("vmVersion", params.getVmVersion());
+        env.put("jdkVersion", params.getJdkVersion());
+        env.put("os", System.getProperty("os.name"));
+        env.put("arch", System.getProperty("os.arch"));
+        env.put("cpus", Runtime.getRuntime().availableProcessors());
+        env.put("jvmArgs", new ArrayList<Object>(params.getJvmArgs()));
+        env.put("baselineJvmArgs", new ArrayList<Object>(JVM_ARGS));
+        return env;
+    }
+
+    private static List<String> jvmArgs(String property) {
+        String trimmed = property.trim();
+        return trimmed.isEmpty() ? Collections.<String>emptyList() : Arrays.asList(trimmed.split("\\s+"));
+    }
+
+    static String environmentKey(Map<String, Object> env) {
+        String key = env.get("vmName") + "-" + env.get("jdkVersion") + "-" + env.get("os") + "-" + env.get("arch")
+                + "-" + ((Number) env.get("cpus")).intValue() + "cpu";
+        // Runs with different flags must not share a baseline. The arguments can be long, so only a hash
+        // is in the file name: the arguments themselves are in the file's environment. Inherited arguments
+        // differ between machines for unrelated reasons, and aren't part of the key.
+        key += "-args" + String.format("%08x", String.valueOf(env.get("baselineJvmArgs")).hashCode());
+        return key.replaceAll("[^A-Za-z0-9._-]+", "_");
+    }
+
+    /**
+     * Identifies a benchmark result in a baseline: the benchmark name, followed by its sorted parameters.
+     */
+    static String resultKey(String benchmark, Map<String, Object> params) {
+        StringBuilder sb = new StringBuilder(benchmark);
+        for (Map.Entry<String, Object> param: new TreeMap<>(params).entrySet()) {
+            sb.append(sb.length() == benchmark.length() ? ':' : ',').append(param.getKey()).append('=').append(param.getValue());
+        }
+        return sb.toString();
+    }
+
+    static Map<String, Object> toJson(RunResult result) {
+        BenchmarkParams params = result.getParams();
+
+        Map<String, Object> paramMap = new LinkedHashMap<>();
+        for (String key: new TreeSet<>(params.getParamsKeys())) {
+            paramMap.put(key, params.getParam(key));
+        }
+
+        List<Object> samples = new ArrayList<>();
+        List<Object> alloc = new ArrayList<>();
+        for (BenchmarkResult fork: result.getBenchmarkResults()) {
+            for (IterationResult iteration: fork.getIterationResults()) {
+                samples.add(iteration.getPrimaryResult().getScore());
+                Result allocResult = iteration.getSecondaryResults().get(ALLOC_NORM);
+                if (allocResult != null) {
+                    alloc.add(allocResult.getScore());
+                }
+            }
+        }
+
+        Map<String, Object> json = new LinkedHashMap<>();
+        json.put("benchmark", params.getBenchmark());
+        json.put("mode", params.getMode().shortLabel());
+        json.put("params", paramMap);
+        json.put("unit", result.getPrimaryResult().getScoreUnit());
+        json.put("samples", samples);
+        json.put("allocBytesPerOp", alloc);
+        return json;
+    }
+
+    @SuppressWarnings("unchecked")
+    static Map<String, Map<String, Object>> readBaseline(Path file) throws IOException {
+        Map<String, Map<String, Object>> results = new LinkedHashMap<>();
+        if (!Files.exists(file)) {
+            return results;
+        }
+        Map<String, Object> json = (Map<String, Object>) Json.parse(new String(Files.readAllBytes(file), StandardCharsets.UTF_8));
+        for (Object r: (List<Object>) json.get("results")) {
+            Map<String, Object> result = (Map<String, Object>) r;
+            results.put(resultKey((String) result.get("benchmark"), (Map<String, Object>) result.get("params")), result);
+        }
+        return results;
+    }
+
+    static void record(Path file, Map<String, Object> environment, Collection<RunResult> runResults) throws IOException {
+        Map<String, Map<String, Object>> results = readBaseline(file);
+        for (RunResult runResult: runResults) {
+            Map<String, Object> json = toJson(runResult);
+            @SuppressWarnings("unchecked")
+            Map<String, Object> params = (Map<String, Object>) json.get("params");
+            results.put(resultKey((String) json.get("benchmark"), params), json);
+        }
+
+        Map<String, Object> baseline = new LinkedHashMap<>();
+        baseline.put("environment", environment);
+        baseline.put("results", new ArrayList<Object>(results.values()));
+
+        if (file.getParent() != null) {
+            Files.createDirectories(file.getParent());
+        }
+        Files.write(file, Json.write(baseline).getBytes(StandardCharsets.UTF_8));
+        System.out.println("Recorded " + runResults.size() + " result(s) in " + file);
+    }
+
+    //---------------------------------------------------------------------------------------------
+    // Comparison
+
+    /**
+     * Compares results with the baseline, and returns the number of regressions, plus the number of
+     * results with no baseline unless {@code allowMissing}.
+     */
+    @SuppressWarnings("unchecked")
+    static int compare(Path file, Collection<RunResult> runResults, boolean allowMissing) throws IOException {
+        Map<String, Map<String, Object>> baseline = readBaseline(file);
+        if (baseline.isEmpty()) {
+            System.out.println("No baseline in " + file + ", record one first");
+            return allowMissing ? 0 : runResults.size();
+        }
+
+        double alpha = Double.parseDouble(System.getProperty("baseline.alpha", "0.01"));
+        double threshold = Double.parseDouble(System.getProperty("baseline.threshold", "0.05"));
+
+        int regressions = 0;
+        int missing = 0;
+        System.out.println();
+        System.out.printf("%-70s %14s %14s %8s %8s %12s  %s%n",
+                "benchmark", "baseline", "current", "change", "p", "alloc B/op", "verdict");
+
+        for (RunResult runResult: runResults) {
+            Map<String, Object> current = toJson(runResult);
+            String key = resultKey((String) current.get("benchmark"), (Map<String, Object>) current.get("params"));
+            Map<String, Object> base = baseline.get(key);
+            String name = shorten(key);
+            if (base == null) {
+                System.out.printf("%-70s %14s %14s %8s %8s %12s  %s%n", name, "-", "-", "-", "-", "-",
+                        allowMissing ? "no baseline" : "FAILED (no baseline)");
+                missing++;
+                continue;
+            }
+
+            double[] baseSamples = toArray((List<Object>) base.get("samples"));
+            double[] currentSamples = toArray((List<Object>) current.get("samples"));
+            double baseMean = StatUtils.mean(baseSamples);
+            double currentMean = StatUtils.mean(currentSamples);
+            double change = (currentMean - baseMean) / baseMean;
+            double p = pValue(baseSamples, currentSamples);
+
+            // Higher is better for throughput, lower is better for time modes
+            boolean higherIsBetter = "thrpt".equals(current.get("mode"));
+            double slowdown = higherIsBetter ? -change : change;
+            boolean slower = p < alpha && slowdown > threshold;
+            boolean faster = p < alpha && slowdown < -threshold;
+
+            double[] baseAlloc = toArray((List<Object>) base.get("allocBytesPerOp"));
+            double[] currentAlloc = toArray((List<Object>) current.get("allocBytesPerOp"));
+            String allocColumn = "-";
+            boolean allocates = false;
+            if (baseAlloc.length > 0 && currentAlloc.length > 0) {
+                double baseAllocMean = StatUtils.mean(baseAlloc);
+                double currentAllocMean = StatUtils.mean(currentAlloc);
+                allocColumn = String.format("%.1f->%.1f", baseAllocMean, currentAllocMean);
+                allocates = currentAllocMean - baseAllocMean > ALLOC_TOLERANCE_BYTES
+                        && pValue(baseAlloc, currentAlloc) < alpha;
+            }
+
+            String verdict;
+            if (slower || allocates) {
+                verdict = "REGRESSION" + (slower ? " (slower)" : "") + (allocates ? " (allocates)" : "");
+                regressions++;
+            } else if (faster) {
+                verdict = "faster";
+            } else {
+                verdict = "ok";
+            }
+
+            System.out.printf("%-70s %14.3f %14.3f %+7.1f%% %8.4f %12s  %s%n",
+                    name, baseMean, currentMean, change * 100, p, allocColumn, verdict);
+        }
+
+        System.out.println();
+        System.out.println(regressions == 0 ? "No regression" : regressions + " regression(s)");
+        if (missing > 0) {
+            System.out.println(missing + " result(s) with no baseline" + (allowMissing ? ", allowed" : ""));
+        }
+        return allowMissing ? regressions : regressions + missing;
+    }
+
+    /**
+     * Two-sided p-value of Welch's t-test. Samples with no variance (e.g. allocation of a non-allocating
+     * benchmark) have no t statistic, and are simply different or not.
+     */
+    static double pValue(double[] a, double[] b) {
+        if (a.length < 2 || b.length < 2) {
+            return 1.0;
+        }
+        if (StatUtils.variance(a) == 0 && StatUtils.variance(b) == 0) {
+            return StatUtils.mean(a) == StatUtils.mean(b) ? 1.0 : 0.0;
+        }
+        return new TTest().tTest(a, b);
+    }
+
+    private static double[] toArray(List<Object> values) {
+        double[] result = new double[values == null ? 0 : values.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = values.get(i) == null ? Double.NaN : ((Number) values.get(i)).doubleValue();
+        }
+        return result;
+    }
+
+    private static String shorten(String key) {
+        String prefix = BaselineRunner.class.getPackage().getName() + ".";
+        return key.startsWith(prefix) ? key.substring(prefix.length()) : key;
+    }
+}
@@ -0,0 +1,70 @@
+package net.bluxte.experiments.couchbase_keyvalue;
+
+/**
+ * The reductions of {@link StatusHistogram} that don't depend on the status table: the OR of a block of
+ * codes and the first non-zero code.
+ *
+ * {@link #SCALAR} is always available. A Vector API implementation is compiled from {@code src/vector/java}
+ * with {@code mvn -Pvector package}, and used when the JVM runs with
+ * {@code --add-modules jdk.incubator.vector}: see {@link #preferred()}.
+ */
+interface BlockScan {
+
+    /**
+     * System property to use {@link #SCALAR} even when the Vector API is available.
+     */
+    String SCALAR_PROPERTY = "kv.status.histogram.scalar";
+
+    /**
+     * OR of {@code codes[from..to[}, zero if they're all SUCCESS.
+     */
+    int or(short[] codes, int from, int to);
+
+    /**
+     * Index of the first non-zero code in {@code codes[from..to[}, or -1.
+     */
+    int firstNonZero(short[] codes, int from, int to);
+
+    BlockScan SCALAR = new BlockScan() {
+        @Override
+        public int or(short[] codes, int from, int to) {
+            int or = 0;
+            for (int i = from; i < to; i++) {
+                or |= codes[i];
+            }
+            return or;
+        }
+
+        @Override
+        public int firstNonZero(short[] codes, int from, int to) {
+            for (int i = from; i < to; i++) {
+                if (codes[i] != 0) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        @Override
+        public String toString() {
+            return "scalar";
+        }
+    };
+
+    /**
+     * The Vector API implementation if it was compiled and the incubator module is present, {@link #SCALAR}
+     * otherwise.
+     */
+    static BlockScan preferred() {
+        if (Boolean.getBoolean(SCALAR_PROPERTY)) {
+            return SCALAR;
+        }
+        try {
+            return (BlockScan) Class.forName(BlockScan.class.getPackage().getName() + ".VectorBlockScan")
+                    .getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            // Not compiled with -Pvector, or jdk.incubator.vector isn't in the module graph
+            return SCALAR;
+        }
+    }
+}
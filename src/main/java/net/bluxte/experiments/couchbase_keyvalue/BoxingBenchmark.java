@@ -8,10 +8,17 @@ import org.openjdk.jmh.annotations.State;
 /**
  * A benchmark to see the effects of Short boxing in map lookups.
  * Results are not conclusive.
+ *
+ * Codes span the full short range, and the boxed map is compared to {@link ShortObjectMap}, which
+ * doesn't box. {@link WorkloadBenchmark} compares both maps on traffic mixes and recordings.
  */
 @State(Scope.Benchmark)
 public class BoxingBenchmark {
     @Param({
+            "-32768",
+            "-129",
+            "-128",
+            "-1",
             "0",
             "127",
             "128",
@@ -20,7 +27,9 @@ public class BoxingBenchmark {
             "511",
             "512",
             "1023",
-            "1024"
+            "1024",
+            "16384",
+            "32767"
     })
     public short code;
 
@@ -28,6 +37,11 @@ public class BoxingBenchmark {
     public KeyValueStatus valueOfLookupMap() {
         return KeyValueStatus.valueOfLookupMap(code);
     }
+
+    @Benchmark
+    public KeyValueStatus valueOfShortMap() {
+        return KeyValueStatus.valueOfShortMap(code);
+    }
 }
 
 /*
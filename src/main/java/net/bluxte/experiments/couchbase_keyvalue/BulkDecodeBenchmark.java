@@ -0,0 +1,98 @@
+package net.bluxte.experiments.couchbase_keyvalue;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+/**
+ * Decoding the statuses of a batch of pipelined response frames: {@link BulkStatusDecoder} compared to
+ * walking the frames and calling {@link KeyValueStatus#valueOfLookupArray(short)} for each of them.
+ *
+ * Scores are per batch, not per frame.
+ */
+@State(Scope.Benchmark)
+public class BulkDecodeBenchmark {
+
+    @Param({
+            "1",
+            "10",
+            "100",
+            "1000",
+            "10000"
+    })
+    public int batchSize;
+
+    @Param({
+            "false",
+            "true"
+    })
+    public boolean direct;
+
+    private ByteBuffer frames;
+    private KeyValueStatus[] statuses;
+    private byte[] ordinals;
+
+    @Setup
+    public void setup() {
+        Random rnd = new Random(0);
+        KeyValueStatus[] values = KeyValueStatus.values();
+
+        // Bodies of 0 to 63 bytes, as for small gets, mutations with extras, etc.
+        int[] bodyLengths = new int[batchSize];
+        int size = 0;
+        for (int i = 0; i < batchSize; i++) {
+            bodyLengths[i] = rnd.nextInt(64);
+            size += BulkStatusDecoder.HEADER_SIZE + bodyLengths[i];
+        }
+
+        frames = direct ? ByteBuffer.allocateDirect(size) : ByteBuffer.allocate(size);
+        for (int i = 0; i < batchSize; i++) {
+            // Skip UNKNOWN, which has no valid code
+            short code = values[1 + rnd.nextInt(values.length - 1)].code();
+            frames.put((byte) 0x81); // magic
+            frames.put((byte) 0x00); // opcode
+            frames.putShort((short) 0); // key length
+            frames.put((byte) 0); // extras length
+            frames.put((byte) 0); // data type
+            frames.putShort(code);
+            frames.putInt(bodyLengths[i]);
+            frames.putInt(i); // opaque
+            frames.putLong(0L); // cas
+            frames.position(frames.position() + bodyLengths[i]);
+        }
+        frames.flip();
+
+        statuses = new KeyValueStatus[batchSize];
+        ordinals = new byte[batchSize];
+    }
+
+    @Benchmark
+    public KeyValueStatus[] bulkDecode() {
+        frames.position(0);
+        BulkStatusDecoder.decode(frames, statuses);
+        return statuses;
+    }
+
+    @Benchmark
+    public byte[] bulkDecodeOrdinals() {
+        frames.position(0);
+        BulkStatusDecoder.decodeOrdinals(frames, ordinals);
+        return ordinals;
+    }
+
+    @Benchmark
+    public KeyValueStatus[] lookupArrayLoop() {
+        ByteBuffer buf = frames;
+        int pos = 0;
+        for (int i = 0; i < batchSize; i++) {
+            statuses[i] = KeyValueStatus.valueOfLookupArray(buf.getShort(pos + 6));
+            pos += BulkStatusDecoder.HEADER_SIZE + buf.getInt(pos + 8);
+        }
+        return statuses;
+    }
+}
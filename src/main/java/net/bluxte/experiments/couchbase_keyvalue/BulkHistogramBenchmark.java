@@ -0,0 +1,178 @@
+package net.bluxte.experiments.couchbase_keyvalue;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ShortBuffer;
+import java.util.Arrays;
+
+/**
+ * Per-status counts and first failure of a column of status codes, as for a multi-get response:
+ * <ul>
+ *     <li>{@code lookupArrayLoop}: {@link KeyValueStatus#valueOfLookupArray(short)} for each code</li>
+ *     <li>{@code histogram}: {@link StatusHistogram} on the array, with Vector API block scans if available</li>
+ *     <li>{@code histogramScalar}: {@link StatusHistogram} on the array, with scalar block scans</li>
+ *     <li>{@code histogramDirect}: {@link StatusHistogram} on a direct {@link ShortBuffer}</li>
+ * </ul>
+ * Scores are per column, not per code.
+ *
+ * Vector API scans are compiled with {@code mvn -Pvector package}, and used when running with
+ * {@code -jvmArgsAppend --add-modules=jdk.incubator.vector}. Otherwise {@code histogram} and
+ * {@code histogramScalar} are the same.
+ */
+@State(Scope.Thread)
+public class BulkHistogramBenchmark {
+
+    @Param({
+            "16",
+            "256",
+            "4096",
+            "65536",
+            "1048576"
+    })
+    public int size;
+
+    @Param({
+            "zipf",
+            "bursty",
+            "subdoc"
+    })
+    public String workload;
+
+    private short[] codes;
+    private ShortBuffer direct;
+
+    private final int[] counts = new int[KeyValueStatus.values().length];
+    private final StatusHistogram histogram = new StatusHistogram();
+    private final StatusHistogram scalarHistogram = new StatusHistogram(BlockScan.SCALAR);
+
+    @Setup
+    public void setup() throws IOException {
+        codes = Workloads.create(workload, size, 1.0, "", 0);
+        direct = ByteBuffer.allocateDirect(size * 2).asShortBuffer();
+        direct.put(codes).flip();
+    }
+
+    @Benchmark
+    public int lookupArrayLoop() {
+        Arrays.fill(counts, 0);
+        int firstFailure = -1;
+        for (int i = 0; i < codes.length; i++) {
+            KeyValueStatus status = KeyValueStatus.valueOfLookupArray(codes[i]);
+            counts[status.ordinal()]++;
+            if (firstFailure < 0 && status != KeyValueStatus.SUCCESS) {
+                firstFailure = i;
+            }
+        }
+        return firstFailure + counts[KeyValueStatus.ERR_TEMP_FAIL.ordinal()];
+    }
+
+    @Benchmark
+    public int histogram() {
+        histogram.reset();
+        histogram.add(codes, 0, codes.length);
+        return histogram.firstFailure() + histogram.count(KeyValueStatus.ERR_TEMP_FAIL);
+    }
+
+    @Benchmark
+    public int histogramScalar() {
+        scalarHistogram.reset();
+        scalarHistogram.add(codes, 0, codes.length);
+        return scalarHistogram.firstFailure() + scalarHistogram.count(KeyValueStatus.ERR_TEMP_FAIL);
+    }
+
+    @Benchmark
+    public int histogramDirect() {
+        histogram.reset();
+        histogram.add(direct);
+        return histogram.firstFailure() + histogram.count(KeyValueStatus.ERR_TEMP_FAIL);
+    }
+}
+
+/*
+
+Single core VM with AVX-512 (512-bit vectors), JDK 17, 3 forks of 5 iterations, built with -Pvector and
+run with -jvmArgsAppend --add-modules=jdk.incubator.vector. Errors are 10 to 30% of the scores, so only
+differences of more than about 1.5x are significant.
+
+- Mostly-SUCCESS columns (bursty, with a burst every 4096 codes, measured in a separate run): blocks of
+  successes are skipped. From 256 codes, histogram is 9 to 17x faster than lookupArrayLoop, more so on
+  longer columns. Vector block scans are 1.5 to 2.6x faster than scalar ones (histogramScalar).
+- Failure-heavy columns (zipf, subdoc): codes are counted one by one either way, and vector scans make no
+  difference. subdoc is 1.4 to 1.7x faster than lookupArrayLoop. zipf is 1.5x faster at 256 codes, within
+  the errors at 4096 and 1M codes, and about 30% slower at 65536 (7572 vs 10687 ops/s).
+- At 16 codes there is no full block: histogram is the same as lookupArrayLoop on failure-heavy columns,
+  and about 2x slower on bursty ones.
+- Direct buffers are copied in chunks to an array: up to 1.6x slower than arrays on bursty columns, the
+  same on failure-heavy ones, and 1.2 to 2x slower at 16 codes.
+
+histogram and histogramScalar run in the same JVM, so the block scan call is bimorphic for both.
+
+Benchmark                                (size)  (workload)   Mode  Cnt         Score         Error  Units
+BulkHistogramBenchmark.histogram             16        zipf  thrpt   15  27878125.129 ± 2526975.780  ops/s
+BulkHistogramBenchmark.histogram             16      bursty  thrpt   15  13841389.501 ± 1963265.812  ops/s
+BulkHistogramBenchmark.histogram             16      subdoc  thrpt   15  20342508.668 ± 2261558.053  ops/s
+BulkHistogramBenchmark.histogram            256        zipf  thrpt   15   3275174.346 ±  459496.614  ops/s
+BulkHistogramBenchmark.histogram            256      bursty  thrpt   15  13406571.832 ±  939066.254  ops/s
+BulkHistogramBenchmark.histogram            256      subdoc  thrpt   15   2238093.468 ±  570494.073  ops/s
+BulkHistogramBenchmark.histogram           4096        zipf  thrpt   15    129573.153 ±   31496.790  ops/s
+BulkHistogramBenchmark.histogram           4096      bursty  thrpt   15    736322.776 ±   15278.761  ops/s
+BulkHistogramBenchmark.histogram           4096      subdoc  thrpt   15    129435.830 ±   22278.831  ops/s
+BulkHistogramBenchmark.histogram          65536        zipf  thrpt   15      7571.526 ±    2107.431  ops/s
+BulkHistogramBenchmark.histogram          65536      bursty  thrpt   15     68956.534 ±   16157.865  ops/s
+BulkHistogramBenchmark.histogram          65536      subdoc  thrpt   15      7069.073 ±    1564.110  ops/s
+BulkHistogramBenchmark.histogram        1048576        zipf  thrpt   15       502.288 ±     121.132  ops/s
+BulkHistogramBenchmark.histogram        1048576      bursty  thrpt   15      5619.377 ±     730.994  ops/s
+BulkHistogramBenchmark.histogram        1048576      subdoc  thrpt   15       504.708 ±      61.357  ops/s
+BulkHistogramBenchmark.histogramDirect       16        zipf  thrpt   15  11226406.257 ± 2231987.498  ops/s
+BulkHistogramBenchmark.histogramDirect       16      bursty  thrpt   15  11171156.602 ± 1170128.261  ops/s
+BulkHistogramBenchmark.histogramDirect       16      subdoc  thrpt   15   9688866.809 ± 1242312.080  ops/s
+BulkHistogramBenchmark.histogramDirect      256        zipf  thrpt   15   1721385.082 ±  298255.259  ops/s
+BulkHistogramBenchmark.histogramDirect      256      bursty  thrpt   15  10933655.617 ± 1031539.605  ops/s
+BulkHistogramBenchmark.histogramDirect      256      subdoc  thrpt   15   2135346.589 ±  300113.724  ops/s
+BulkHistogramBenchmark.histogramDirect     4096        zipf  thrpt   15    106719.476 ±   14450.083  ops/s
+BulkHistogramBenchmark.histogramDirect     4096      bursty  thrpt   15    785531.221 ±  150975.211  ops/s
+BulkHistogramBenchmark.histogramDirect     4096      subdoc  thrpt   15    132837.110 ±   30197.168  ops/s
+BulkHistogramBenchmark.histogramDirect    65536        zipf  thrpt   15      8005.526 ±    1844.290  ops/s
+BulkHistogramBenchmark.histogramDirect    65536      bursty  thrpt   15     56150.979 ±    8411.926  ops/s
+BulkHistogramBenchmark.histogramDirect    65536      subdoc  thrpt   15      7974.311 ±    1847.595  ops/s
+BulkHistogramBenchmark.histogramDirect  1048576        zipf  thrpt   15       448.577 ±      74.681  ops/s
+BulkHistogramBenchmark.histogramDirect  1048576      bursty  thrpt   15      3411.386 ±     562.452  ops/s
+BulkHistogramBenchmark.histogramDirect  1048576      subdoc  thrpt   15       426.625 ±      58.906  ops/s
+BulkHistogramBenchmark.histogramScalar       16        zipf  thrpt   15  18615620.808 ± 3459967.866  ops/s
+BulkHistogramBenchmark.histogramScalar       16      bursty  thrpt   15  17071193.670 ± 2731865.698  ops/s
+BulkHistogramBenchmark.histogramScalar       16      subdoc  thrpt   15  13920540.083 ±  806854.484  ops/s
+BulkHistogramBenchmark.histogramScalar      256        zipf  thrpt   15   2365310.371 ±  374429.012  ops/s
+BulkHistogramBenchmark.histogramScalar      256      bursty  thrpt   15   9256138.482 ± 1374151.144  ops/s
+BulkHistogramBenchmark.histogramScalar      256      subdoc  thrpt   15   2412822.618 ±  455490.563  ops/s
+BulkHistogramBenchmark.histogramScalar     4096        zipf  thrpt   15    118594.031 ±   16939.779  ops/s
+BulkHistogramBenchmark.histogramScalar     4096      bursty  thrpt   15    503808.196 ±   87741.547  ops/s
+BulkHistogramBenchmark.histogramScalar     4096      subdoc  thrpt   15    128885.537 ±   22659.711  ops/s
+BulkHistogramBenchmark.histogramScalar    65536        zipf  thrpt   15      7236.041 ±    1816.436  ops/s
+BulkHistogramBenchmark.histogramScalar    65536      bursty  thrpt   15     34449.760 ±    5151.481  ops/s
+BulkHistogramBenchmark.histogramScalar    65536      subdoc  thrpt   15      7095.185 ±     780.772  ops/s
+BulkHistogramBenchmark.histogramScalar  1048576        zipf  thrpt   15       557.508 ±     103.800  ops/s
+BulkHistogramBenchmark.histogramScalar  1048576      bursty  thrpt   15      2173.938 ±     345.041  ops/s
+BulkHistogramBenchmark.histogramScalar  1048576      subdoc  thrpt   15       583.118 ±     107.210  ops/s
+BulkHistogramBenchmark.lookupArrayLoop       16        zipf  thrpt   15  27568892.054 ± 5208543.953  ops/s
+BulkHistogramBenchmark.lookupArrayLoop       16      bursty  thrpt   15  26874191.553 ± 3273708.173  ops/s
+BulkHistogramBenchmark.lookupArrayLoop       16      subdoc  thrpt   15  18165563.883 ±  300602.865  ops/s
+BulkHistogramBenchmark.lookupArrayLoop      256        zipf  thrpt   15   2219437.096 ±  493612.524  ops/s
+BulkHistogramBenchmark.lookupArrayLoop      256      bursty  thrpt   15   1391135.285 ±   61294.828  ops/s
+BulkHistogramBenchmark.lookupArrayLoop      256      subdoc  thrpt   15   1319528.515 ±   63918.025  ops/s
+BulkHistogramBenchmark.lookupArrayLoop     4096        zipf  thrpt   15    113131.771 ±   12353.746  ops/s
+BulkHistogramBenchmark.lookupArrayLoop     4096      bursty  thrpt   15     85171.275 ±    2283.942  ops/s
+BulkHistogramBenchmark.lookupArrayLoop     4096      subdoc  thrpt   15     82524.712 ±    2072.351  ops/s
+BulkHistogramBenchmark.lookupArrayLoop    65536        zipf  thrpt   15     10687.316 ±    1950.015  ops/s
+BulkHistogramBenchmark.lookupArrayLoop    65536      bursty  thrpt   15      5272.654 ±     209.811  ops/s
+BulkHistogramBenchmark.lookupArrayLoop    65536      subdoc  thrpt   15      4871.769 ±      71.416  ops/s
+BulkHistogramBenchmark.lookupArrayLoop  1048576        zipf  thrpt   15       556.196 ±      63.831  ops/s
+BulkHistogramBenchmark.lookupArrayLoop  1048576      bursty  thrpt   15       332.273 ±       8.196  ops/s
+BulkHistogramBenchmark.lookupArrayLoop  1048576      subdoc  thrpt   15       305.397 ±       8.009  ops/s
+
+*/
@@ -0,0 +1,97 @@
+package net.bluxte.experiments.couchbase_keyvalue;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Bulk decoding of status codes from a buffer of pipelined memcached binary protocol response frames.
+ *
+ * Frames are read in place: the status is read at its offset in the 24-byte header, and the header's
+ * total body length is used to jump to the next frame. Nothing is allocated per frame, results are
+ * written to a caller-supplied array.
+ *
+ * Decoding starts at the buffer's position and stops when the output array is full or when the
+ * remaining bytes don't hold a complete frame. The buffer's position is then moved past the decoded
+ * frames, so that a partial frame at the end can be completed by the next network read.
+ */
+public class BulkStatusDecoder {
+
+    public static final int HEADER_SIZE = 24;
+
+    private static final int STATUS_OFFSET = 6;
+    private static final int BODY_LENGTH_OFFSET = 8;
+
+    /**
+     * Decode the status of each complete frame in {@code frames}.
+     *
+     * @param frames concatenated response frames, heap or direct, in network byte order.
+     * @param statuses the array receiving the decoded statuses, starting at index 0.
+     * @return the number of decoded frames.
+     */
+    public static int decode(ByteBuffer frames, KeyValueStatus[] statuses) {
+        final boolean swap = frames.order() != ByteOrder.BIG_ENDIAN;
+        final int limit = frames.limit();
+        int pos = frames.position();
+        int count = 0;
+
+        while (count < statuses.length && limit - pos >= HEADER_SIZE) {
+            int next = nextFrame(frames, pos, limit, swap);
+            if (next < 0) {
+                break;
+            }
+            statuses[count++] = KeyValueStatus.valueOfLookupArray(status(frames, pos, swap));
+            pos = next;
+        }
+
+        frames.position(pos);
+        return count;
+    }
+
+    /**
+     * Decode the status of each complete frame in {@code frames} as {@link KeyValueStatus} ordinals,
+     * for callers that store statuses in a compact column.
+     *
+     * @param frames concatenated response frames, heap or direct, in network byte order.
+     * @param result the array receiving the decoded ordinals, starting at index 0.
+     * @return the number of decoded frames.
+     */
+    public static int decodeOrdinals(ByteBuffer frames, byte[] result) {
+        final boolean swap = frames.order() != ByteOrder.BIG_ENDIAN;
+        final int limit = frames.limit();
+        int pos = frames.position();
+        int count = 0;
+
+        while (count < result.length && limit - pos >= HEADER_SIZE) {
+            int next = nextFrame(frames, pos, limit, swap);
+            if (next < 0) {
+                break;
+            }
+            result[count++] = (byte) KeyValueStatus.valueOfLookupArray(status(frames, pos, swap)).ordinal();
+            pos = next;
+        }
+
+        frames.position(pos);
+        return count;
+    }
+
+    /**
+     * Read the raw status code of the frame starting at {@code pos}.
+     */
+    private static short status(ByteBuffer frames, int pos, boolean swap) {
+        short status = frames.getShort(pos + STATUS_OFFSET);
+        return swap ? Short.reverseBytes(status) : status;
+    }
+
+    /**
+     * Offset of the frame following the one that starts at {@code pos}, or -1 if that frame isn't complete.
+     */
+    private static int nextFrame(ByteBuffer frames, int pos, int limit, boolean swap) {
+        int bodyLength = frames.getInt(pos + BODY_LENGTH_OFFSET);
+        if (swap) {
+            bodyLength = Integer.reverseBytes(bodyLength);
+        }
+        // Body length is an unsigned 32 bit value: anything above 2GB can't fit in a ByteBuffer anyway
+        long next = (long) pos + HEADER_SIZE + (bodyLength & 0xFFFFFFFFL);
+        return next <= limit ? (int) next : -1;
+    }
+}
@@ -0,0 +1,84 @@
+package net.bluxte.experiments.couchbase_keyvalue;
+
+import org.openjdk.jmh.annotations.Benchmark;
+
+/**
+ * The decision taken on the hot path right after decoding a status, with realistic traffic mixes (see
+ * {@link CodeSequence}):
+ * <ul>
+ *     <li>{@code switchOnEnum}: resolve the enum, then {@code switch} on it</li>
+ *     <li>{@code enumFlags}: resolve the enum, then mask its precomputed category flags</li>
+ *     <li>{@code codeFlags}: mask the category flags of the raw code, without resolving the enum</li>
+ * </ul>
+ */
+public class ClassificationBenchmark {
+
+    static final int DONE = 0;
+    static final int RETRY = 1;
+    static final int REFRESH_CONFIG_AND_RETRY = 2;
+    static final int SUBDOC_FAILURE = 3;
+    static final int AUTH_FAILURE = 4;
+    static final int FAILURE = 5;
+
+    @Benchmark
+    public int switchOnEnum(CodeSequence codes) {
+        KeyValueStatus status = KeyValueStatus.valueOfLookupArray(codes.next());
+        switch (status) {
+            case SUCCESS:
+                return DONE;
+            case ERR_NOT_MY_VBUCKET:
+                return REFRESH_CONFIG_AND_RETRY;
+            case ERR_TEMP_FAIL:
+            case ERR_BUSY:
+            case ERR_NOT_INITIALIZED:
+                return RETRY;
+            case ERR_SUBDOC_PATH_NOT_FOUND:
+            case ERR_SUBDOC_PATH_MISMATCH:
+            case ERR_SUBDOC_PATH_INVALID:
+            case ERR_SUBDOC_PATH_TOO_BIG:
+            case ERR_SUBDOC_DOC_TOO_DEEP:
+            case ERR_SUBDOC_VALUE_CANTINSERT:
+            case ERR_SUBDOC_DOC_NOT_JSON:
+            case ERR_SUBDOC_NUM_RANGE:
+            case ERR_SUBDOC_DELTA_RANGE:
+            case ERR_SUBDOC_PATH_EXISTS:
+            case ERR_SUBDOC_VALUE_TOO_DEEP:
+            case ERR_SUBDOC_INVALID_COMBO:
+            case ERR_SUBDOC_MULTI_PATH_FAILURE:
+                return SUBDOC_FAILURE;
+            case ERR_AUTH_STALE:
+            case ERR_AUTH_ERROR:
+            case ERR_AUTH_CONTINUE:
+            case ERR_ACCESS:
+                return AUTH_FAILURE;
+            default:
+                return FAILURE;
+        }
+    }
+
+    @Benchmark
+    public int enumFlags(CodeSequence codes) {
+        return decide(KeyValueStatus.valueOfLookupArray(codes.next()).flags());
+    }
+
+    @Benchmark
+    public int codeFlags(CodeSequence codes) {
+        return decide(KeyValueStatus.flagsOf(codes.next()));
+    }
+
+    private static int decide(int flags) {
+        if ((flags & StatusCategory.SUCCESS) != 0) {
+            return DONE;
+        } else if ((flags & StatusCategory.TOPOLOGY_CHANGE) != 0) {
+            return REFRESH_CONFIG_AND_RETRY;
+        } else if ((flags & StatusCategory.RETRYABLE) != 0) {
+            return RETRY;
+        } else if ((flags & StatusCategory.SUBDOC) != 0) {
+            return SUBDOC_FAILURE;
+        } else if ((flags & StatusCategory.AUTH) != 0) {
+            return AUTH_FAILURE;
+        } else {
+            return FAILURE;
+        }
+    }
+}
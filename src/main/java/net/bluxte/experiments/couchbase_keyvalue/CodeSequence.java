@@ -0,0 +1,71 @@
+package net.bluxte.experiments.couchbase_keyvalue;
+
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Per-thread benchmark state that cycles over a pre-generated sequence of status codes.
+ *
+ * The sequence is padded to a power of two by repeating it, so that {@link #next()} is a mask and a
+ * load. Its default length (64k codes, 128kB) fits in L2 caches: misses come from the resolver's
+ * data structures rather than from the sequence itself.
+ *
+ * Replay a trace with {@code -p workload=trace -p traceFile=<path>}, or a {@link StatusRecorder} recording
+ * with {@code -p workload=recording -p traceFile=<directory>}.
+ */
+@State(Scope.Thread)
+public class CodeSequence {
+
+    @Param({
+            "uniform",
+            "zipf",
+            "bursty"
+    })
+    public String workload;
+
+    @Param({"1.0"})
+    public double skew;
+
+    @Param({""})
+    public String traceFile;
+
+    @Param({"65536"})
+    public int length;
+
+    private short[] codes;
+    private int mask;
+    private int index;
+
+    @Setup
+    public void setup() throws IOException {
+        short[] generated = Workloads.create(workload, length, skew, traceFile, 0);
+        if (generated.length == 0) {
+            throw new IllegalArgumentException("Empty workload");
+        }
+        int size = Integer.highestOneBit(generated.length);
+        if (size < generated.length) {
+            size <<= 1;
+        }
+        codes = Arrays.copyOf(generated, size);
+        for (int i = generated.length; i < size; i++) {
+            codes[i] = generated[i - generated.length];
+        }
+        mask = size - 1;
+    }
+
+    public short next() {
+        return codes[index++ & mask];
+    }
+
+    /**
+     * The full sequence, for bulk benchmarks. Must not be modified.
+     */
+    public short[] codes() {
+        return codes;
+    }
+}
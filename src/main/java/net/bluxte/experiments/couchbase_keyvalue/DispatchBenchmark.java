@@ -0,0 +1,104 @@
+package net.bluxte.experiments.couchbase_keyvalue;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * The cost of pluggable resolvers: a direct static call compared to the bindings of
+ * {@link StatusResolvers} and to interface calls with 1, 2 and 4 receiver types at the call site.
+ *
+ * All interface implementations here delegate to {@link KeyValueStatus#valueOfLookupArray(short)}, and
+ * static calls select a receiver like interface calls but don't use it, so that differences come from
+ * dispatch only. Each benchmark has its own call site, and JMH forks a JVM per benchmark, so type profiles
+ * don't leak between them. Run with the default {@code -Dkv.status.resolver}.
+ */
+@State(Scope.Thread)
+public class DispatchBenchmark {
+
+    static class ResolverA implements StatusResolver {
+        @Override
+        public KeyValueStatus resolve(short code) {
+            return KeyValueStatus.valueOfLookupArray(code);
+        }
+    }
+
+    static class ResolverB implements StatusResolver {
+        @Override
+        public KeyValueStatus resolve(short code) {
+            return KeyValueStatus.valueOfLookupArray(code);
+        }
+    }
+
+    static class ResolverC implements StatusResolver {
+        @Override
+        public KeyValueStatus resolve(short code) {
+            return KeyValueStatus.valueOfLookupArray(code);
+        }
+    }
+
+    static class ResolverD implements StatusResolver {
+        @Override
+        public KeyValueStatus resolve(short code) {
+            return KeyValueStatus.valueOfLookupArray(code);
+        }
+    }
+
+    public short code = 0x86;
+
+    private final StatusResolver[] monomorphic = {
+            new ResolverA(), new ResolverA(), new ResolverA(), new ResolverA()
+    };
+
+    private final StatusResolver[] bimorphic = {
+            new ResolverA(), new ResolverB(), new ResolverA(), new ResolverB()
+    };
+
+    private final StatusResolver[] megamorphic = {
+            new ResolverA(), new ResolverB(), new ResolverC(), new ResolverD()
+    };
+
+    private int index;
+    // Stored so that the receiver load isn't eliminated when it's not used
+    private StatusResolver receiver;
+
+    /**
+     * The next receiver of {@code receivers}, with the same cost in every benchmark.
+     */
+    private StatusResolver next(StatusResolver[] receivers) {
+        return receiver = receivers[index++ & 3];
+    }
+
+    @Benchmark
+    public KeyValueStatus staticCall() {
+        next(monomorphic);
+        return KeyValueStatus.valueOfLookupArray(code);
+    }
+
+    @Benchmark
+    public KeyValueStatus staticFinalHolder() {
+        next(monomorphic);
+        return StatusResolvers.resolveSelected(code);
+    }
+
+    @Benchmark
+    public KeyValueStatus constantCallSite() {
+        next(monomorphic);
+        return StatusResolvers.resolveSelectedHandle(code);
+    }
+
+    @Benchmark
+    public KeyValueStatus monomorphicInterface() {
+        return next(monomorphic).resolve(code);
+    }
+
+    @Benchmark
+    public KeyValueStatus bimorphicInterface() {
+        return next(bimorphic).resolve(code);
+    }
+
+    @Benchmark
+    public KeyValueStatus megamorphicInterface() {
+        return next(megamorphic).resolve(code);
+    }
+}
@@ -0,0 +1,107 @@
+package net.bluxte.experiments.couchbase_keyvalue;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Requests over a loopback connection to a {@link StandInServer}, with statuses decoded by each resolver,
+ * to see what share of the cost of a request status decoding really is:
+ * <ul>
+ *     <li>{@code pipelined}: requests per second, with up to {@code window} requests in flight</li>
+ *     <li>{@code roundTrip}: latency of a single request</li>
+ * </ul>
+ * The {@code none} resolver doesn't decode statuses, and gives the cost of everything else.
+ */
+@State(Scope.Benchmark)
+public class EndToEndBenchmark {
+
+    private static final int BATCH = 1024;
+
+    @Param({
+            "none",
+            "LOOP",
+            "LOOKUP_MAP",
+            "LOOKUP_ARRAY",
+            "BIG_SWITCH"
+    })
+    public String resolver;
+
+    @Param({
+            "zipf",
+            "bursty",
+            "subdoc"
+    })
+    public String mix;
+
+    @Param({"32"})
+    public int valueSize;
+
+    private StandInServer server;
+
+    @Setup
+    public void setup() throws IOException {
+        server = new StandInServer(Workloads.create(mix, 65536, 1.0, "", 0), valueSize);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        server.close();
+    }
+
+    StatusResolver statusResolver() {
+        if (resolver.equals("none")) {
+            return code -> KeyValueStatus.SUCCESS;
+        }
+        return StatusResolvers.forName(resolver);
+    }
+
+    @State(Scope.Thread)
+    public static class Client {
+        PipelinedClient client;
+
+        @Setup
+        public void setup(EndToEndBenchmark benchmark) throws IOException {
+            client = new PipelinedClient(benchmark.server.address(), benchmark.statusResolver());
+        }
+
+        @TearDown
+        public void tearDown() throws IOException {
+            client.close();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Pipeline {
+        @Param({
+                "16",
+                "256"
+        })
+        public int window;
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    @OperationsPerInvocation(BATCH)
+    public int pipelined(Client client, Pipeline pipeline) throws IOException {
+        return client.client.execute(BATCH, pipeline.window);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public int roundTrip(Client client) throws IOException {
+        return client.client.execute(1, 1);
+    }
+}
@@ -0,0 +1,85 @@
+package net.bluxte.experiments.couchbase_keyvalue;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.CompilerControl;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+
+/**
+ * Throughput of the error path at increasing error rates, with failures turned into exceptions:
+ * <ul>
+ *     <li>{@code newException}: a new exception, with stack trace and message, for each failure</li>
+ *     <li>{@code stacklessException}: the shared stackless instances from {@link StatusExceptions}</li>
+ * </ul>
+ * Run with {@code -prof gc} to see allocation.
+ */
+@State(Scope.Thread)
+public class ErrorPathBenchmark {
+
+    @Param({
+            "0.001",
+            "0.1",
+            "1.0"
+    })
+    public double errorRate;
+
+    private short[] codes;
+    private int index;
+
+    @Setup
+    public void setup() {
+        // Failures are split between rebalance and overload errors
+        Random rnd = new Random(0);
+        codes = new short[1024];
+        for (int i = 0; i < codes.length; i++) {
+            if (rnd.nextDouble() >= errorRate) {
+                codes[i] = KeyValueStatus.SUCCESS.code();
+            } else if (rnd.nextBoolean()) {
+                codes[i] = KeyValueStatus.ERR_NOT_MY_VBUCKET.code();
+            } else {
+                codes[i] = KeyValueStatus.ERR_TEMP_FAIL.code();
+            }
+        }
+    }
+
+    @Benchmark
+    public Object newException() {
+        try {
+            return checkNew(codes[index++ & (codes.length - 1)]);
+        } catch (KeyValueStatusException e) {
+            return e;
+        }
+    }
+
+    @Benchmark
+    public Object stacklessException() {
+        try {
+            return checkStackless(codes[index++ & (codes.length - 1)]);
+        } catch (KeyValueStatusException e) {
+            return e;
+        }
+    }
+
+    // Not inlined, so that the JIT can't turn throw and catch into a plain jump
+    @CompilerControl(CompilerControl.Mode.DONT_INLINE)
+    private static KeyValueStatus checkNew(short code) {
+        KeyValueStatus status = KeyValueStatus.valueOfLookupArray(code);
+        if (status != KeyValueStatus.SUCCESS) {
+            throw new KeyValueStatusException(status);
+        }
+        return status;
+    }
+
+    @CompilerControl(CompilerControl.Mode.DONT_INLINE)
+    private static KeyValueStatus checkStackless(short code) {
+        KeyValueStatus status = KeyValueStatus.valueOfLookupArray(code);
+        if (status != KeyValueStatus.SUCCESS) {
+            throw StatusExceptions.cached(status);
+        }
+        return status;
+    }
+}
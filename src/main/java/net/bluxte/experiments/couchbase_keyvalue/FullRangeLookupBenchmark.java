@@ -0,0 +1,95 @@
+package net.bluxte.experiments.couchbase_keyvalue;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Lookups over the full 16-bit status space: the two-level page table compared to the 256-entry table
+ * (which only covers 0x00-0xff), the boxed map and the big switch.
+ *
+ * Lookup time is measured by JMH. Run {@link #main(String[])} to print the retained heap footprint of
+ * each structure.
+ */
+@State(Scope.Benchmark)
+public class FullRangeLookupBenchmark {
+
+    @Param({
+            "0", // 0x00, Success
+            "134", // 0x86 Temporary Failure
+            "255", // 0xff, undefined, last entry of the 256-entry table
+            "256", // 0x100, undefined, first code beyond the 256-entry table
+            "4660", // 0x1234, undefined
+            "-1" // 0xffff, undefined, last 16-bit code
+    })
+    public short code;
+
+    @Benchmark
+    public KeyValueStatus lookupArray() {
+        return KeyValueStatus.valueOfLookupArray(code);
+    }
+
+    @Benchmark
+    public KeyValueStatus lookupPaged() {
+        return KeyValueStatus.valueOfPagedLookup(code);
+    }
+
+    @Benchmark
+    public KeyValueStatus lookupMap() {
+        return KeyValueStatus.valueOfLookupMap(code);
+    }
+
+    @Benchmark
+    public KeyValueStatus lookupBigSwitch() {
+        return KeyValueStatus.valueOfBigSwitch(code);
+    }
+
+    //---------------------------------------------------------------------------------------------
+    // Retained heap footprint, estimated from the structure of each lookup table on a 64-bit
+    // HotSpot with compressed oops: 12-byte object headers, 16-byte array headers, 4-byte references
+    // and objects aligned on 8 bytes. Enum constants are not counted, as all variants share them.
+
+    private static final int REF = 4;
+
+    public static void main(String[] args) {
+        int entries = KeyValueStatus.values().length - 1; // UNKNOWN isn't stored
+
+        Set<Integer> pages = new HashSet<>();
+        for (KeyValueStatus value: KeyValueStatus.values()) {
+            if (value != KeyValueStatus.UNKNOWN) {
+                pages.add((value.code() & 0xffff) >>> 8);
+            }
+        }
+
+        // HashMap: the map, its power-of-two table at 0.75 load factor, one node and one Short per entry.
+        // Shorts from -128 to 127 come from the Short cache, but are retained by the map all the same.
+        int mapTable = Integer.highestOneBit((int) Math.ceil(entries / 0.75) - 1) << 1;
+        long map = align(12 + 4 * 4 + 4 * REF) // size, modCount, threshold, loadFactor, table, entrySet, keySet, values
+                + array(mapTable, REF)
+                + entries * align(12 + 4 + 3 * REF) // Node: hash, key, value, next
+                + entries * align(12 + 2); // Short
+
+        long array = array(0x100, REF);
+
+        // The outer table, the shared unknown page, and one page per populated range
+        long paged = array(0x100, REF) + (1 + pages.size()) * array(0x100, REF);
+
+        System.out.printf("%-16s %10s %16s%n", "Structure", "Bytes", "Code range");
+        System.out.printf("%-16s %10d %16s%n", "lookupArray", array, "0x0000-0x00ff");
+        System.out.printf("%-16s %10d %16s%n", "lookupPaged", paged, "0x0000-0xffff");
+        System.out.printf("%-16s %10d %16s%n", "lookupMap", map, "0x0000-0xffff");
+        System.out.printf("%-16s %10s %16s%n", "lookupBigSwitch", "0 (code)", "0x0000-0xffff");
+    }
+
+    private static long array(int length, int elementSize) {
+        return align(16 + (long) length * elementSize);
+    }
+
+    private static long align(long size) {
+        return (size + 7) & ~7L;
+    }
+}
@@ -0,0 +1,291 @@
+package net.bluxte.experiments.couchbase_keyvalue;
+
+import java.io.Closeable;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A hashed timer wheel, for large numbers of short-lived timers such as request retries.
+ *
+ * Time is divided in ticks, and the wheel has a bucket per tick modulo its size. Scheduling and
+ * cancellation are O(1) and lock-free: new and cancelled timeouts go through concurrent queues that the
+ * timer thread drains at every tick, so that buckets are only touched by the timer thread. The cost is
+ * precision: timeouts expire at the end of the tick of their deadline, and the timer thread visits every
+ * timeout of a bucket once per revolution of the wheel.
+ *
+ * Tasks run on the timer thread, and must be short: hand them off to an executor otherwise.
+ */
+public class HashedTimerWheel implements Closeable {
+
+    // Maximum number of new timeouts added to buckets at each tick, so that a burst of scheduling
+    // doesn't delay expiration
+    private static final int MAX_TRANSFERS_PER_TICK = 100_000;
+
+    private final long tickNanos;
+    private final Bucket[] wheel;
+    private final int mask;
+    private final long startNanos;
+
+    private final Queue<Timeout> scheduled = new ConcurrentLinkedQueue<>();
+    private final Queue<Timeout> cancelled = new ConcurrentLinkedQueue<>();
+    private final LongAdder pending = new LongAdder();
+
+    private final Thread thread;
+    private volatile boolean running = true;
+
+    // Only used by the timer thread
+    private long tick;
+
+    /**
+     * Create a timer wheel and start its thread.
+     *
+     * @param tickDuration duration of a tick, i.e. the precision of the timer.
+     * @param ticksPerWheel number of buckets, rounded up to a power of two.
+     */
+    public HashedTimerWheel(long tickDuration, TimeUnit unit, int ticksPerWheel) {
+        if (tickDuration <= 0) {
+            throw new IllegalArgumentException("Tick duration must be positive: " + tickDuration);
+        }
+        if (ticksPerWheel <= 0 || ticksPerWheel > 1 << 30) {
+            throw new IllegalArgumentException("Invalid ticks per wheel: " + ticksPerWheel);
+        }
+
+        int size = Integer.highestOneBit(ticksPerWheel - 1) << 1;
+        size = Math.max(size, 1);
+        wheel = new Bucket[size];
+        for (int i = 0; i < size; i++) {
+            wheel[i] = new Bucket();
+        }
+        mask = size - 1;
+        tickNanos = unit.toNanos(tickDuration);
+        startNanos = System.nanoTime();
+
+        thread = new Thread(this::run, "timer-wheel");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Run {@code task} on the timer thread after {@code delay}.
+     */
+    public Timeout schedule(Runnable task, long delay, TimeUnit unit) {
+        if (!running) {
+            throw new IllegalStateException("Timer is closed");
+        }
+        long deadline = System.nanoTime() - startNanos + unit.toNanos(delay);
+        Timeout timeout = new Timeout(this, task, deadline);
+        pending.increment();
+        scheduled.add(timeout);
+        return timeout;
+    }
+
+    /**
+     * Number of timeouts that are neither expired nor cancelled.
+     */
+    public long pending() {
+        return pending.sum();
+    }
+
+    /**
+     * Number of scheduled and cancelled timeouts that the timer thread hasn't processed yet. It grows
+     * without bound if the timer thread can't keep up. Walks the queues: for monitoring and tests only.
+     */
+    public long backlog() {
+        return scheduled.size() + cancelled.size();
+    }
+
+    /**
+     * Stop the timer thread. Pending timeouts never expire.
+     */
+    @Override
+    public void close() {
+        running = false;
+        LockSupport.unpark(thread);
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    //---------------------------------------------------------------------------------------------
+    // Timer thread
+
+    private void run() {
+        while (running) {
+            waitForNextTick();
+            if (!running) {
+                break;
+            }
+            removeCancelled();
+            transferScheduled();
+            wheel[(int) (tick & mask)].expire();
+            tick++;
+        }
+    }
+
+    /**
+     * Wait for the end of the current tick.
+     */
+    private void waitForNextTick() {
+        long deadline = tickNanos * (tick + 1);
+        while (running) {
+            long now = System.nanoTime() - startNanos;
+            if (now >= deadline) {
+                return;
+            }
+            LockSupport.parkNanos(deadline - now);
+        }
+    }
+
+    private void removeCancelled() {
+        Timeout timeout;
+        while ((timeout = cancelled.poll()) != null) {
+            // Null if cancelled before being transferred to a bucket, it is then dropped by transferScheduled()
+            if (timeout.bucket != null) {
+                timeout.bucket.remove(timeout);
+            }
+        }
+    }
+
+    private void transferScheduled() {
+        for (int i = 0; i < MAX_TRANSFERS_PER_TICK; i++) {
+            Timeout timeout = scheduled.poll();
+            if (timeout == null) {
+                return;
+            }
+            if (timeout.state != Timeout.INIT) {
+                continue;
+            }
+            // Deadlines in the past expire at the current tick
+            long ticks = Math.max(timeout.deadline / tickNanos, tick);
+            timeout.remainingRounds = (ticks - tick) / wheel.length;
+            wheel[(int) (ticks & mask)].add(timeout);
+        }
+    }
+
+    //---------------------------------------------------------------------------------------------
+    // Timeouts
+
+    /**
+     * A scheduled task, that can be cancelled until it expires.
+     */
+    public static final class Timeout {
+
+        private static final int INIT = 0;
+        private static final int CANCELLED = 1;
+        private static final int EXPIRED = 2;
+
+        private static final AtomicIntegerFieldUpdater<Timeout> STATE =
+                AtomicIntegerFieldUpdater.newUpdater(Timeout.class, "state");
+
+        private final HashedTimerWheel timer;
+        private final Runnable task;
+        private final long deadline;
+        private volatile int state = INIT;
+
+        // Only used by the timer thread
+        private long remainingRounds;
+        private Bucket bucket;
+        private Timeout prev;
+        private Timeout next;
+
+        Timeout(HashedTimerWheel timer, Runnable task, long deadline) {
+            this.timer = timer;
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        /**
+         * Cancel this timeout, if it hasn't expired yet.
+         *
+         * @return {@code true} if the task will not run, {@code false} if it already ran or was cancelled.
+         */
+        public boolean cancel() {
+            if (!STATE.compareAndSet(this, INIT, CANCELLED)) {
+                return false;
+            }
+            timer.pending.decrement();
+            timer.cancelled.add(this);
+            return true;
+        }
+
+        public boolean isCancelled() {
+            return state == CANCELLED;
+        }
+
+        public boolean isExpired() {
+            return state == EXPIRED;
+        }
+
+        void expire() {
+            if (STATE.compareAndSet(this, INIT, EXPIRED)) {
+                timer.pending.decrement();
+                try {
+                    task.run();
+                } catch (Throwable t) {
+                    // Don't let a failed task stop the timer thread
+                    Thread.currentThread().getUncaughtExceptionHandler().uncaughtException(Thread.currentThread(), t);
+                }
+            }
+        }
+    }
+
+    /**
+     * Doubly-linked list of timeouts, for O(1) removal of cancelled timeouts.
+     */
+    private static final class Bucket {
+        private Timeout head;
+        private Timeout tail;
+
+        void add(Timeout timeout) {
+            timeout.bucket = this;
+            if (head == null) {
+                head = tail = timeout;
+            } else {
+                tail.next = timeout;
+                timeout.prev = tail;
+                tail = timeout;
+            }
+        }
+
+        void remove(Timeout timeout) {
+            if (timeout.prev != null) {
+                timeout.prev.next = timeout.next;
+            } else {
+                head = timeout.next;
+            }
+            if (timeout.next != null) {
+                timeout.next.prev = timeout.prev;
+            } else {
+                tail = timeout.prev;
+            }
+            timeout.prev = null;
+            timeout.next = null;
+            timeout.bucket = null;
+        }
+
+        /**
+         * Expire the timeouts of the current round, and move the others one round closer.
+         */
+        void expire() {
+            Timeout timeout = head;
+            while (timeout != null) {
+                Timeout next = timeout.next;
+                if (timeout.remainingRounds <= 0) {
+                    remove(timeout);
+                    timeout.expire();
+                } else if (timeout.isCancelled()) {
+                    remove(timeout);
+                } else {
+                    timeout.remainingRounds--;
+                }
+                timeout = next;
+            }
+        }
+    }
+}
@@ -0,0 +1,281 @@
+package net.bluxte.experiments.couchbase_keyvalue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Checks what the JIT actually does with each resolver, rather than guessing from benchmark results.
+ *
+ * For each resolver, a JVM is forked to run {@link Driver} with compilation logging, and facts are
+ * extracted from the C2 compilation log and from the compiled code of the resolver:
+ * <ul>
+ *     <li>{@link Fact#INLINED}: the resolver method is inlined in its caller</li>
+ *     <li>{@link Fact#NO_RANGE_CHECK_TRAP}: no compiled code was deoptimized by a failed bounds check</li>
+ *     <li>{@link Fact#JUMP_TABLE}: the compiled resolver has a table of addresses into its own code, i.e.
+ *     a switch lowered to a jump table (and not, as once guessed, to a native hash map)</li>
+ * </ul>
+ * Facts that are expected for a resolver are asserted, and the process exits with status 1 if one of
+ * them doesn't hold: run it on a new JDK to catch JIT regressions before they show in latency.
+ *
+ * Run with {@code mvn -Pjit-verify verify}, or directly with the project classpath.
+ */
+public class JitVerifier {
+
+    public enum Fact {
+        INLINED,
+        NO_RANGE_CHECK_TRAP,
+        JUMP_TABLE
+    }
+
+    private static final Map<StatusResolvers, Set<Fact>> EXPECTED = new HashMap<>();
+
+    static {
+        EXPECTED.put(StatusResolvers.LOOKUP_ARRAY, EnumSet.of(Fact.INLINED, Fact.NO_RANGE_CHECK_TRAP));
+        EXPECTED.put(StatusResolvers.PAGED_LOOKUP, EnumSet.of(Fact.INLINED, Fact.NO_RANGE_CHECK_TRAP));
+        EXPECTED.put(StatusResolvers.SHORT_MAP, EnumSet.of(Fact.INLINED, Fact.NO_RANGE_CHECK_TRAP));
+        EXPECTED.put(StatusResolvers.LOOP_ON_CONSTANT_ARRAY, EnumSet.of(Fact.INLINED));
+        EXPECTED.put(StatusResolvers.LOOKUP_ARRAY_UNCHECKED, EnumSet.of(Fact.INLINED, Fact.NO_RANGE_CHECK_TRAP));
+        // At 436 bytes of bytecode, the switch is above FreqInlineSize and is never inlined
+        EXPECTED.put(StatusResolvers.BIG_SWITCH, EnumSet.of(Fact.JUMP_TABLE));
+    }
+
+    public static void main(String[] args) throws Exception {
+        List<StatusResolvers> resolvers = new ArrayList<>();
+        if (args.length == 0) {
+            resolvers.addAll(EXPECTED.keySet());
+            resolvers.sort(null);
+        } else {
+            for (String arg: args) {
+                resolvers.add(StatusResolvers.forName(arg));
+            }
+        }
+
+        int failures = 0;
+        for (StatusResolvers resolver: resolvers) {
+            Set<Fact> facts = observe(resolver);
+            Set<Fact> expected = EXPECTED.getOrDefault(resolver, EnumSet.noneOf(Fact.class));
+
+            System.out.printf("%-24s observed %s%n", resolver, facts);
+            for (Fact fact: expected) {
+                if (!facts.contains(fact)) {
+                    System.out.printf("%-24s FAILED: expected %s%n", "", fact);
+                    failures++;
+                }
+            }
+        }
+
+        if (failures > 0) {
+            System.out.println(failures + " expectation(s) failed");
+            System.exit(1);
+        }
+    }
+
+    //---------------------------------------------------------------------------------------------
+    // Observation
+
+    static Set<Fact> observe(StatusResolvers resolver) throws IOException, InterruptedException {
+        Path log = Files.createTempFile("jit-" + resolver, ".log");
+        try {
+            String output = fork(resolver,
+                    "-XX:+UnlockDiagnosticVMOptions",
+                    "-XX:+LogCompilation",
+                    "-XX:LogFile=" + log,
+                    "-XX:CompileCommand=quiet",
+                    "-XX:CompileCommand=print," + KeyValueStatus.class.getName() + "::" + resolver.methodName());
+
+            String compilationLog = new String(Files.readAllBytes(log), StandardCharsets.UTF_8);
+
+            Set<Fact> facts = EnumSet.noneOf(Fact.class);
+            if (isInlined(compilationLog, resolver.methodName())) {
+                facts.add(Fact.INLINED);
+            }
+            if (!RANGE_CHECK_TRAP.matcher(compilationLog).find()) {
+                facts.add(Fact.NO_RANGE_CHECK_TRAP);
+            }
+            if (hasJumpTable(output)) {
+                facts.add(Fact.JUMP_TABLE);
+            }
+            return facts;
+        } finally {
+            Files.deleteIfExists(log);
+        }
+    }
+
+    private static String fork(StatusResolvers resolver, String... jvmArgs) throws IOException, InterruptedException {
+        List<String> command = new ArrayList<>();
+        command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add("-D" + StatusResolvers.PROPERTY + "=" + resolver);
+        command.addAll(Arrays.asList(jvmArgs));
+        command.add(Driver.class.getName());
+
+        Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+        byte[] output = readFully(process);
+        if (process.waitFor() != 0) {
+            throw new IllegalStateException("Driver failed for " + resolver + ":\n" + new String(output, StandardCharsets.UTF_8));
+        }
+        return new String(output, StandardCharsets.UTF_8);
+    }
+
+    private static byte[] readFully(Process process) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int n;
+        while ((n = process.getInputStream().read(buffer)) > 0) {
+            out.write(buffer, 0, n);
+        }
+        return out.toByteArray();
+    }
+
+    //---------------------------------------------------------------------------------------------
+    // Compilation log parsing
+
+    // Runtime trap events have a thread attribute, unlike traps emitted at parse time
+    private static final Pattern RANGE_CHECK_TRAP = Pattern.compile("<uncommon_trap thread='[^']*' reason='range_check'");
+
+    private static final Pattern TASK = Pattern.compile("<task ([^>]*)>");
+    private static final Pattern METHOD = Pattern.compile("<method id='(\\d+)' holder='\\d+' name='([^']+)'");
+    private static final Pattern CALL = Pattern.compile("<call method='(\\d+)'");
+    private static final Pattern INLINE = Pattern.compile("<inline_(success|fail) ");
+
+    /**
+     * Is {@code methodName} inlined in the last C2 compilation of {@link Driver#drive(short[])}?
+     */
+    static boolean isInlined(String compilationLog, String methodName) {
+        String driverTask = null;
+        Matcher task = TASK.matcher(compilationLog);
+        while (task.find()) {
+            String attributes = task.group(1);
+            // Depending on the JDK, C2 tasks have either no level attribute or level 4
+            boolean c2 = !attributes.contains(" level=") || attributes.contains(" level='4'");
+            if (c2 && !attributes.contains("compile_kind='osr'")
+                    && attributes.contains("method='" + Driver.class.getName() + " drive ")) {
+                int end = compilationLog.indexOf("</task>", task.end());
+                driverTask = compilationLog.substring(task.end(), end < 0 ? compilationLog.length() : end);
+            }
+        }
+        if (driverTask == null) {
+            return false;
+        }
+
+        Map<String, String> methods = new HashMap<>();
+        String pendingCall = null;
+        for (String line: driverTask.split("\n")) {
+            Matcher m = METHOD.matcher(line);
+            if (m.find()) {
+                methods.put(m.group(1), m.group(2));
+                continue;
+            }
+            m = CALL.matcher(line);
+            if (m.find()) {
+                pendingCall = methods.get(m.group(1));
+                continue;
+            }
+            m = INLINE.matcher(line);
+            if (m.find() && methodName.equals(pendingCall)) {
+                return m.group(1).equals("success");
+            }
+        }
+        return false;
+    }
+
+    //---------------------------------------------------------------------------------------------
+    // Compiled code parsing
+
+    private static final Pattern C2_METHOD = Pattern.compile("Compiled method \\(c2\\)");
+    private static final Pattern MAIN_CODE = Pattern.compile("main code\\s+\\[0x([0-9a-f]+),0x([0-9a-f]+)\\]");
+    private static final Pattern CONSTANT = Pattern.compile("^\\s+0x[0-9a-f]+:\\s+0x[0-9a-f]+\\s+0x([0-9a-f]{16})");
+
+    // Same default as C2's MinJumpTableSize on x86
+    private static final int MIN_JUMP_TABLE_SIZE = 10;
+
+    /**
+     * Does the last C2 compiled code printed in {@code output} have at least {@link #MIN_JUMP_TABLE_SIZE}
+     * constants that are addresses into its own main code?
+     */
+    static boolean hasJumpTable(String output) {
+        int start = -1;
+        Matcher c2 = C2_METHOD.matcher(output);
+        while (c2.find()) {
+            start = c2.start();
+        }
+        if (start < 0) {
+            return false;
+        }
+
+        String code = output.substring(start);
+        Matcher main = MAIN_CODE.matcher(code);
+        if (!main.find()) {
+            return false;
+        }
+        long codeStart = Long.parseUnsignedLong(main.group(1), 16);
+        long codeEnd = Long.parseUnsignedLong(main.group(2), 16);
+
+        int addresses = 0;
+        boolean inConstants = false;
+        for (String line: code.split("\n")) {
+            if (line.startsWith("[Constant Pool")) {
+                inConstants = true;
+            } else if (inConstants && line.startsWith("[")) {
+                break;
+            } else if (inConstants) {
+                Matcher m = CONSTANT.matcher(line);
+                if (m.find()) {
+                    long value = Long.parseUnsignedLong(m.group(1), 16);
+                    if (value >= codeStart && value < codeEnd) {
+                        addresses++;
+                    }
+                }
+            }
+        }
+        return addresses >= MIN_JUMP_TABLE_SIZE;
+    }
+
+    //---------------------------------------------------------------------------------------------
+    // Forked workload
+
+    /**
+     * Calls the resolver selected with {@link StatusResolvers#PROPERTY} from a hot loop, with known codes
+     * and codes beyond the range of the 256-entry lookup table.
+     */
+    public static class Driver {
+
+        static int drive(short[] codes) {
+            int sum = 0;
+            for (short code: codes) {
+                sum += StatusResolvers.resolveSelected(code).ordinal();
+            }
+            return sum;
+        }
+
+        public static void main(String[] args) {
+            short[] codes = Workloads.uniform(1024, 0);
+            for (int i = 0; i < codes.length; i += 8) {
+                codes[i] = (short) (0x100 + i);
+            }
+
+            long sum = 0;
+            for (int i = 0; i < 50_000; i++) {
+                sum += drive(codes);
+            }
+            // Use the result, so that the loop isn't dead code
+            if (sum == 42) {
+                System.out.println(sum);
+            }
+        }
+    }
+}
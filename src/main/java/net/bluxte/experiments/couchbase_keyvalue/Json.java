@@ -0,0 +1,259 @@
+package net.bluxte.experiments.couchbase_keyvalue;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Minimal JSON reader and writer for benchmark baselines, to avoid a dependency for a few files.
+ *
+ * Values are {@code Map<String, Object>} (keeping key order), {@code List<Object>}, {@code String},
+ * {@code Double} (or any {@code Number} when writing), {@code Boolean} and {@code null}.
+ */
+final class Json {
+
+    private Json() {}
+
+    //---------------------------------------------------------------------------------------------
+    // Writing
+
+    static String write(Object value) {
+        StringBuilder sb = new StringBuilder();
+        write(value, sb, "");
+        return sb.append('\n').toString();
+    }
+
+    private static void write(Object value, StringBuilder sb, String indent) {
+        if (value == null || value instanceof Boolean) {
+            sb.append(value);
+
+        } else if (value instanceof Number) {
+            double d = ((Number) value).doubleValue();
+            if (Double.isNaN(d) || Double.isInfinite(d)) {
+                sb.append("null");
+            } else if (d == Math.rint(d) && Math.abs(d) < 1e15) {
+                sb.append((long) d);
+            } else {
+                sb.append(d);
+            }
+
+        } else if (value instanceof String) {
+            writeString((String) value, sb);
+
+        } else if (value instanceof Map) {
+            String nested = indent + "  ";
+            sb.append('{');
+            boolean first = true;
+            for (Map.Entry<?, ?> entry: ((Map<?, ?>) value).entrySet()) {
+                sb.append(first ? "\n" : ",\n").append(nested);
+                writeString(entry.getKey().toString(), sb);
+                sb.append(": ");
+                write(entry.getValue(), sb, nested);
+                first = false;
+            }
+            sb.append(first ? "}" : "\n" + indent + "}");
+
+        } else if (value instanceof List) {
+            List<?> list = (List<?>) value;
+            // Lists of numbers (samples) are kept on one line
+            boolean inline = list.stream().allMatch(v -> v instanceof Number);
+            String nested = indent + "  ";
+            sb.append('[');
+            for (int i = 0; i < list.size(); i++) {
+                if (inline) {
+                    sb.append(i == 0 ? "" : ", ");
+                } else {
+                    sb.append(i == 0 ? "\n" : ",\n").append(nested);
+                }
+                write(list.get(i), sb, nested);
+            }
+            sb.append(inline || list.isEmpty() ? "]" : "\n" + indent + "]");
+
+        } else {
+            throw new IllegalArgumentException("Not a JSON value: " + value.getClass());
+        }
+    }
+
+    private static void writeString(String s, StringBuilder sb) {
+        sb.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '"':  sb.append("\\\""); break;
+                case '\\': sb.append("\\\\"); break;
+                case '\n': sb.append("\\n"); break;
+                case '\r': sb.append("\\r"); break;
+                case '\t': sb.append("\\t"); break;
+                default:
+                    if (c < 0x20) {
+                        sb.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        sb.append(c);
+                    }
+            }
+        }
+        sb.append('"');
+    }
+
+    //---------------------------------------------------------------------------------------------
+    // Reading
+
+    static Object parse(String text) {
+        Parser parser = new Parser(text);
+        Object value = parser.value();
+        parser.skipWhitespace();
+        if (parser.pos != text.length()) {
+            throw parser.error("trailing characters");
+        }
+        return value;
+    }
+
+    private static class Parser {
+        final String text;
+        int pos;
+
+        Parser(String text) {
+            this.text = text;
+        }
+
+        Object value() {
+            skipWhitespace();
+            if (pos >= text.length()) {
+                throw error("unexpected end of input");
+            }
+            char c = text.charAt(pos);
+            switch (c) {
+                case '{': return object();
+                case '[': return array();
+                case '"': return string();
+                case 't': return literal("true", Boolean.TRUE);
+                case 'f': return literal("false", Boolean.FALSE);
+                case 'n': return literal("null", null);
+                default:  return number();
+            }
+        }
+
+        Map<String, Object> object() {
+            Map<String, Object> result = new LinkedHashMap<>();
+            pos++;
+            skipWhitespace();
+            if (peek() == '}') {
+                pos++;
+                return result;
+            }
+            while (true) {
+                skipWhitespace();
+                String key = string();
+                skipWhitespace();
+                expect(':');
+                result.put(key, value());
+                skipWhitespace();
+                if (peek() == '}') {
+                    pos++;
+                    return result;
+                }
+                expect(',');
+            }
+        }
+
+        List<Object> array() {
+            List<Object> result = new ArrayList<>();
+            pos++;
+            skipWhitespace();
+            if (peek() == ']') {
+                pos++;
+                return result;
+            }
+            while (true) {
+                result.add(value());
+                skipWhitespace();
+                if (peek() == ']') {
+                    pos++;
+                    return result;
+                }
+                expect(',');
+            }
+        }
+
+        String string() {
+            expect('"');
+            StringBuilder sb = new StringBuilder();
+            while (true) {
+                char c = next();
+                if (c == '"') {
+                    return sb.toString();
+                }
+                if (c != '\\') {
+                    sb.append(c);
+                    continue;
+                }
+                c = next();
+                switch (c) {
+                    case 'n': sb.append('\n'); break;
+                    case 'r': sb.append('\r'); break;
+                    case 't': sb.append('\t'); break;
+                    case 'b': sb.append('\b'); break;
+                    case 'f': sb.append('\f'); break;
+                    case 'u':
+                        if (pos + 4 > text.length()) {
+                            throw error("invalid unicode escape");
+                        }
+                        sb.append((char) Integer.parseInt(text.substring(pos, pos + 4), 16));
+                        pos += 4;
+                        break;
+                    default: sb.append(c);
+                }
+            }
+        }
+
+        Double number() {
+            int start = pos;
+            while (pos < text.length() && "+-0123456789.eE".indexOf(text.charAt(pos)) >= 0) {
+                pos++;
+            }
+            if (start == pos) {
+                throw error("unexpected character '" + text.charAt(pos) + "'");
+            }
+            return Double.valueOf(text.substring(start, pos));
+        }
+
+        Object literal(String literal, Object value) {
+            if (!text.startsWith(literal, pos)) {
+                throw error("unexpected character '" + text.charAt(pos) + "'");
+            }
+            pos += literal.length();
+            return value;
+        }
+
+        void skipWhitespace() {
+            while (pos < text.length() && Character.isWhitespace(text.charAt(pos))) {
+                pos++;
+            }
+        }
+
+        char peek() {
+            if (pos >= text.length()) {
+                throw error("unexpected end of input");
+            }
+            return text.charAt(pos);
+        }
+
+        char next() {
+            char c = peek();
+            pos++;
+            return c;
+        }
+
+        void expect(char c) {
+            if (next() != c) {
+                pos--;
+                throw error("expected '" + c + "'");
+            }
+        }
+
+        IllegalArgumentException error(String message) {
+            return new IllegalArgumentException("Invalid JSON at offset " + pos + ": " + message);
+        }
+    }
+}
@@ -0,0 +1,225 @@
+package net.bluxte.experiments.couchbase_keyvalue;
+
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the same benchmarks across a matrix of JVM configurations (compilers, GCs, compressed oops, JDKs)
+ * and prints one comparison table per strategy, and the winning strategy for each configuration.
+ *
+ * Usage: {@code JvmMatrixRunner [benchmark regexp]}, by default {@code ValueOfBenchmark|BoxingBenchmark}.
+ *
+ * The matrix is {@link #defaultMatrix()}, or the file given with {@code -Djvm.matrix=<file>}, with one
+ * configuration per line:
+ * <pre>
+ * # name [java=&lt;java home&gt;] [jvm args...]
+ * c2-only -XX:-TieredCompilation
+ * jdk21-zgc java=/opt/jdk-21 -XX:+UseZGC
+ * </pre>
+ */
+public class JvmMatrixRunner {
+
+    static class JvmConfig {
+        final String name;
+        final String javaHome;
+        final List<String> jvmArgs;
+
+        JvmConfig(String name, String javaHome, String... jvmArgs) {
+            this.name = name;
+            this.javaHome = javaHome;
+            this.jvmArgs = Arrays.asList(jvmArgs);
+        }
+
+        String java() {
+            return javaHome + File.separator + "bin" + File.separator + "java";
+        }
+    }
+
+    /**
+     * Default matrix. G1 is only added if it isn't already the GC of the {@code default} configuration, as
+     * on JDK 8. An alternate JDK is added if {@code ALT_JAVA_HOME} is set.
+     */
+    static List<JvmConfig> defaultMatrix() {
+        String javaHome = System.getProperty("java.home");
+        List<JvmConfig> matrix = new ArrayList<>();
+        matrix.add(new JvmConfig("default", javaHome));
+        // Without tiered compilation, only C2 compiles hot code
+        matrix.add(new JvmConfig("c2-only", javaHome, "-XX:-TieredCompilation"));
+        matrix.add(new JvmConfig("c1-only", javaHome, "-XX:TieredStopAtLevel=1"));
+        matrix.add(new JvmConfig("no-coops", javaHome, "-XX:-UseCompressedOops"));
+        matrix.add(new JvmConfig("serial-gc", javaHome, "-XX:+UseSerialGC"));
+        matrix.add(new JvmConfig("parallel-gc", javaHome, "-XX:+UseParallelGC"));
+        if (!usesG1()) {
+            matrix.add(new JvmConfig("g1-gc", javaHome, "-XX:+UseG1GC"));
+        }
+
+        String altJavaHome = System.getenv("ALT_JAVA_HOME");
+        if (altJavaHome != null && !altJavaHome.isEmpty()) {
+            matrix.add(new JvmConfig("alt-jdk", altJavaHome));
+        }
+        return matrix;
+    }
+
+    /**
+     * Forks inherit the arguments of this JVM and use the same JDK, so they have the same default GC.
+     */
+    private static boolean usesG1() {
+        for (GarbageCollectorMXBean gc: ManagementFactory.getGarbageCollectorMXBeans()) {
+            if (gc.getName().startsWith("G1 ")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    static List<JvmConfig> readMatrix(String file) throws IOException {
+        List<JvmConfig> matrix = new ArrayList<>();
+        for (String line: Files.readAllLines(Paths.get(file), StandardCharsets.UTF_8)) {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+
+            List<String> tokens = new ArrayList<>(Arrays.asList(line.split("\\s+")));
+            String name = tokens.remove(0);
+            String javaHome = System.getProperty("java.home");
+            if (!tokens.isEmpty() && tokens.get(0).startsWith("java=")) {
+                javaHome = tokens.remove(0).substring("java=".length());
+            }
+            matrix.add(new JvmConfig(name, javaHome, tokens.toArray(new String[0])));
+        }
+        return matrix;
+    }
+
+    public static void main(String[] args) throws RunnerException, IOException {
+        String include = args.length > 0 ? args[0] : "ValueOfBenchmark|BoxingBenchmark";
+        String matrixFile = System.getProperty("jvm.matrix");
+        List<JvmConfig> matrix = matrixFile == null ? defaultMatrix() : readMatrix(matrixFile);
+
+        // benchmark -> params -> config -> [score, error]
+        Map<String, Map<String, Map<String, double[]>>> results = new TreeMap<>();
+
+        for (JvmConfig config: matrix) {
+            Options opts = new OptionsBuilder()
+                    .include(include)
+                    .jvm(config.java())
+                    .jvmArgsAppend(config.jvmArgs.toArray(new String[0]))
+                    .mode(Mode.AverageTime)
+                    .timeUnit(TimeUnit.NANOSECONDS)
+                    .forks(1)
+                    .warmupIterations(5)
+                    .warmupTime(TimeValue.seconds(1))
+                    .measurementIterations(5)
+                    .measurementTime(TimeValue.seconds(1))
+                    .build();
+
+            for (RunResult result: new Runner(opts).run()) {
+                results.computeIfAbsent(result.getParams().getBenchmark(), k -> new TreeMap<>())
+                        .computeIfAbsent(params(result), k -> new LinkedHashMap<>())
+                        .put(config.name, new double[] {
+                                result.getPrimaryResult().getScore(),
+                                result.getPrimaryResult().getScoreError()
+                        });
+            }
+        }
+
+        printTables(results, matrix);
+        printWinners(results, matrix);
+    }
+
+    private static String params(RunResult result) {
+        StringBuilder sb = new StringBuilder();
+        for (String key: new TreeSet<>(result.getParams().getParamsKeys())) {
+            if (sb.length() > 0) {
+                sb.append(',');
+            }
+            sb.append(key).append('=').append(result.getParams().getParam(key));
+        }
+        return sb.length() == 0 ? "-" : sb.toString();
+    }
+
+    private static void printTables(Map<String, Map<String, Map<String, double[]>>> results, List<JvmConfig> matrix) {
+        for (Map.Entry<String, Map<String, Map<String, double[]>>> benchmark: results.entrySet()) {
+            System.out.println();
+            System.out.println(benchmark.getKey() + " (ns/op)");
+            System.out.printf("%-20s", "params");
+            for (JvmConfig config: matrix) {
+                System.out.printf("%20s", config.name);
+            }
+            System.out.println();
+
+            for (Map.Entry<String, Map<String, double[]>> params: benchmark.getValue().entrySet()) {
+                System.out.printf("%-20s", params.getKey());
+                for (JvmConfig config: matrix) {
+                    double[] score = params.getValue().get(config.name);
+                    System.out.printf("%20s", score == null ? "-" : String.format("%.3f +- %.3f", score[0], score[1]));
+                }
+                System.out.println();
+            }
+        }
+    }
+
+    /**
+     * For each benchmark class, parameter set and configuration, the fastest benchmark method.
+     */
+    private static void printWinners(Map<String, Map<String, Map<String, double[]>>> results, List<JvmConfig> matrix) {
+        // class -> params -> config -> [method, score]
+        Map<String, Map<String, Map<String, Object[]>>> winners = new TreeMap<>();
+        for (Map.Entry<String, Map<String, Map<String, double[]>>> benchmark: results.entrySet()) {
+            String name = benchmark.getKey();
+            String className = name.substring(0, name.lastIndexOf('.'));
+            String method = name.substring(name.lastIndexOf('.') + 1);
+
+            for (Map.Entry<String, Map<String, double[]>> params: benchmark.getValue().entrySet()) {
+                Map<String, Object[]> byConfig = winners.computeIfAbsent(className, k -> new TreeMap<>())
+                        .computeIfAbsent(params.getKey(), k -> new LinkedHashMap<>());
+                for (Map.Entry<String, double[]> score: params.getValue().entrySet()) {
+                    Object[] best = byConfig.get(score.getKey());
+                    if (best == null || score.getValue()[0] < (Double) best[1]) {
+                        byConfig.put(score.getKey(), new Object[] { method, score.getValue()[0] });
+                    }
+                }
+            }
+        }
+
+        for (Map.Entry<String, Map<String, Map<String, Object[]>>> benchmarkClass: winners.entrySet()) {
+            System.out.println();
+            System.out.println(benchmarkClass.getKey() + ": fastest strategy");
+            System.out.printf("%-20s", "params");
+            for (JvmConfig config: matrix) {
+                System.out.printf("%24s", config.name);
+            }
+            System.out.println();
+
+            for (Map.Entry<String, Map<String, Object[]>> params: benchmarkClass.getValue().entrySet()) {
+                System.out.printf("%-20s", params.getKey());
+                for (JvmConfig config: matrix) {
+                    Object[] best = params.getValue().get(config.name);
+                    System.out.printf("%24s", best == null ? "-" : best[0]);
+                }
+                System.out.println();
+            }
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package net.bluxte.experiments.couchbase_keyvalue;
+
+/**
+ * A failed KeyValue operation, with the status returned by the server.
+ *
+ * Instances are usually obtained from {@link StatusExceptions}, which can share a single stackless
+ * instance per status.
+ */
+public class KeyValueStatusException extends RuntimeException {
+
+    private final KeyValueStatus status;
+
+    /**
+     * A new exception, with its own stack trace.
+     */
+    public KeyValueStatusException(KeyValueStatus status) {
+        this(status, true);
+    }
+
+    /**
+     * @param writableStackTrace if {@code false}, the stack trace isn't filled in, and suppressed exceptions
+     *        are ignored, so that the instance can be shared between threads.
+     */
+    protected KeyValueStatusException(KeyValueStatus status, boolean writableStackTrace) {
+        // A null cause, rather than none, so that initCause() can't modify shared instances either
+        super(message(status), null, writableStackTrace, writableStackTrace);
+        this.status = status;
+    }
+
+    public KeyValueStatus status() {
+        return status;
+    }
+
+    private static String message(KeyValueStatus status) {
+        return String.format("%s (0x%02x): %s", status, status.code(), status.description());
+    }
+}
@@ -0,0 +1,41 @@
+package net.bluxte.experiments.couchbase_keyvalue;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * {@link StatusStats} on one {@link LongAdder} per status.
+ *
+ * {@link LongAdder#sumThenReset()} may lose updates that race with it, so adders are never reset:
+ * a snapshot is the difference with the totals seen by the previous one.
+ */
+public class LongAdderStatusStats implements StatusStats {
+
+    private final LongAdder[] adders;
+    private final long[] previousTotals;
+
+    public LongAdderStatusStats() {
+        int size = KeyValueStatus.values().length;
+        adders = new LongAdder[size];
+        for (int i = 0; i < size; i++) {
+            adders[i] = new LongAdder();
+        }
+        previousTotals = new long[size];
+    }
+
+    @Override
+    public void record(KeyValueStatus status) {
+        adders[status.ordinal()].increment();
+    }
+
+    // Only serializes readers, writers never take this lock
+    @Override
+    public synchronized long[] snapshotAndReset() {
+        long[] result = new long[adders.length];
+        for (int i = 0; i < adders.length; i++) {
+            long total = adders[i].sum();
+            result[i] = total - previousTotals[i];
+            previousTotals[i] = total;
+        }
+        return result;
+    }
+}
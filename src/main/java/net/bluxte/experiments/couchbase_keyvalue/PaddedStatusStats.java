@@ -0,0 +1,20 @@
+package net.bluxte.experiments.couchbase_keyvalue;
+
+/**
+ * {@link StatusStats} on striped and cache-line-padded counters: each thread mostly updates its own
+ * stripe, so increments don't bounce cache lines between cores.
+ */
+public class PaddedStatusStats implements StatusStats {
+
+    private final StripedCounters counters = new StripedCounters(KeyValueStatus.values().length);
+
+    @Override
+    public void record(KeyValueStatus status) {
+        counters.increment(status.ordinal());
+    }
+
+    @Override
+    public long[] snapshotAndReset() {
+        return counters.snapshotAndReset();
+    }
+}
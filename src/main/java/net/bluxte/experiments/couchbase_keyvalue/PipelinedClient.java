@@ -0,0 +1,127 @@
+package net.bluxte.experiments.couchbase_keyvalue;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+
+/**
+ * A non-blocking memcached binary protocol client that pipelines GET requests on a single connection and
+ * decodes the status of responses with a {@link StatusResolver}.
+ *
+ * Not thread-safe: use one client per thread.
+ */
+public class PipelinedClient implements Closeable {
+
+    private static final byte MAGIC_REQUEST = (byte) 0x80;
+    private static final byte OPCODE_GET = 0x00;
+
+    private static final int HEADER_SIZE = BulkStatusDecoder.HEADER_SIZE;
+    private static final int STATUS_OFFSET = 6;
+    private static final int BODY_LENGTH_OFFSET = 8;
+    private static final int BUFFER_SIZE = 256 * 1024;
+
+    private static final byte[] KEY = "key".getBytes(StandardCharsets.US_ASCII);
+    private static final int REQUEST_SIZE = HEADER_SIZE + KEY.length;
+
+    private final StatusResolver resolver;
+    private final SocketChannel channel;
+    private final Selector selector;
+    private final SelectionKey key;
+
+    // Both buffers are kept ready to be filled
+    private final ByteBuffer out = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private final ByteBuffer in = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+    private int opaque;
+
+    public PipelinedClient(InetSocketAddress address, StatusResolver resolver) throws IOException {
+        this.resolver = resolver;
+        channel = SocketChannel.open(address);
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        channel.configureBlocking(false);
+        selector = Selector.open();
+        key = channel.register(selector, SelectionKey.OP_READ);
+    }
+
+    /**
+     * Send {@code count} GET requests, with at most {@code window} of them waiting for their response, and
+     * decode the status of all responses.
+     *
+     * @return the number of responses that aren't {@link KeyValueStatus#SUCCESS}.
+     */
+    public int execute(int count, int window) throws IOException {
+        int sent = 0;
+        int received = 0;
+        int failures = 0;
+
+        while (received < count) {
+            while (sent < count && sent - received < window && out.remaining() >= REQUEST_SIZE) {
+                putRequest();
+                sent++;
+            }
+            out.flip();
+            channel.write(out);
+            out.compact();
+
+            int read = channel.read(in);
+            if (read < 0) {
+                throw new EOFException("Connection closed by server");
+            }
+            if (read == 0) {
+                key.interestOps(out.position() > 0 ? SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+                selector.select();
+                selector.selectedKeys().clear();
+                continue;
+            }
+
+            in.flip();
+            while (in.remaining() >= HEADER_SIZE) {
+                int pos = in.position();
+                long bodyLength = in.getInt(pos + BODY_LENGTH_OFFSET) & 0xFFFFFFFFL;
+                if (HEADER_SIZE + bodyLength > in.capacity()) {
+                    throw new IOException("Response too large");
+                }
+                if (in.remaining() < HEADER_SIZE + bodyLength) {
+                    break;
+                }
+                if (resolver.resolve(in.getShort(pos + STATUS_OFFSET)) != KeyValueStatus.SUCCESS) {
+                    failures++;
+                }
+                received++;
+                in.position(pos + HEADER_SIZE + (int) bodyLength);
+            }
+            in.compact();
+        }
+
+        return failures;
+    }
+
+    private void putRequest() {
+        out.put(MAGIC_REQUEST);
+        out.put(OPCODE_GET);
+        out.putShort((short) KEY.length);
+        out.put((byte) 0); // extras length
+        out.put((byte) 0); // data type
+        out.putShort((short) 0); // vbucket
+        out.putInt(KEY.length); // total body length
+        out.putInt(opaque++);
+        out.putLong(0L); // cas
+        out.put(KEY);
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            selector.close();
+        } finally {
+            channel.close();
+        }
+    }
+}
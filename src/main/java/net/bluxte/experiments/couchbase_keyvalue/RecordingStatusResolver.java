@@ -0,0 +1,155 @@
+package net.bluxte.experiments.couchbase_keyvalue;
+
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.FlightRecorderListener;
+import jdk.jfr.Recording;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A {@link StatusResolver} that reports resolutions to Flight Recorder:
+ * <ul>
+ *     <li>{@link StatusCountEvent}: periodic count of each status, recorded in {@link StatusStats}</li>
+ *     <li>{@link StatusResolutionEvent}: one event for every {@code sampleRate} resolutions on average,
+ *     with the code, status and duration, and at most {@code maxEventsPerSecond} per thread</li>
+ * </ul>
+ * Whether each event is enabled is checked when recordings start and stop, and kept in a flag: with no
+ * recording, the cost is reading two fields. Counting costs a striped counter increment, and sampling a
+ * random number on top of that.
+ *
+ * Sampling alone doesn't bound the event rate, which grows with throughput: 1/1024 of 10M resolutions per
+ * second is 10k events per second. Sampled resolutions are then throttled with a per-thread budget of
+ * events that is refilled every second, so that the event rate is bounded by the number of threads.
+ *
+ * Defaults are set with {@code -Dkv.status.jfr.sampleRate=<n>} (default 1024) and
+ * {@code -Dkv.status.jfr.maxEventsPerSecond=<n>} (default 100).
+ */
+public class RecordingStatusResolver implements StatusResolver {
+
+    public static final String SAMPLE_RATE_PROPERTY = "kv.status.jfr.sampleRate";
+
+    public static final String MAX_EVENTS_PER_SECOND_PROPERTY = "kv.status.jfr.maxEventsPerSecond";
+
+    private static final int DEFAULT_SAMPLE_RATE = Integer.getInteger(SAMPLE_RATE_PROPERTY, 1024);
+    private static final int DEFAULT_MAX_EVENTS_PER_SECOND = Integer.getInteger(MAX_EVENTS_PER_SECOND_PROPERTY, 100);
+
+    private static final long PERIOD_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private static final StatusStats counts = StatusStats.padded();
+
+    private static volatile boolean countEnabled;
+    private static volatile boolean resolutionEnabled;
+
+    static {
+        FlightRecorder.addPeriodicEvent(StatusCountEvent.class, RecordingStatusResolver::emitCounts);
+        FlightRecorder.addListener(new FlightRecorderListener() {
+            @Override
+            public void recordingStateChanged(Recording recording) {
+                updateEnabled();
+            }
+        });
+        updateEnabled();
+    }
+
+    private final StatusResolver delegate;
+    private final String resolverName;
+    private final int sampleRate;
+    private final int maxEventsPerSecond;
+    private final ThreadLocal<Budget> budgets = ThreadLocal.withInitial(Budget::new);
+
+    public RecordingStatusResolver(StatusResolver delegate) {
+        this(delegate, DEFAULT_SAMPLE_RATE, DEFAULT_MAX_EVENTS_PER_SECOND);
+    }
+
+    public RecordingStatusResolver(StatusResolver delegate, int sampleRate, int maxEventsPerSecond) {
+        if (sampleRate < 1) {
+            throw new IllegalArgumentException("Sample rate must be at least 1: " + sampleRate);
+        }
+        if (maxEventsPerSecond < 1) {
+            throw new IllegalArgumentException("Max events per second must be at least 1: " + maxEventsPerSecond);
+        }
+        this.delegate = delegate;
+        this.resolverName = delegate.toString();
+        this.sampleRate = sampleRate;
+        this.maxEventsPerSecond = maxEventsPerSecond;
+    }
+
+    @Override
+    public KeyValueStatus resolve(short code) {
+        KeyValueStatus status;
+        if (resolutionEnabled && ThreadLocalRandom.current().nextInt(sampleRate) == 0 && acquireEvent()) {
+            status = resolveAndRecord(code);
+        } else {
+            status = delegate.resolve(code);
+        }
+        if (countEnabled) {
+            counts.record(status);
+        }
+        return status;
+    }
+
+    /**
+     * Take an event from the budget of the current thread, if it has some left in this period.
+     */
+    private boolean acquireEvent() {
+        Budget budget = budgets.get();
+        long now = System.nanoTime();
+        if (now - budget.periodStart >= PERIOD_NANOS) {
+            budget.periodStart = now;
+            budget.remaining = maxEventsPerSecond;
+        }
+        if (budget.remaining == 0) {
+            return false;
+        }
+        budget.remaining--;
+        return true;
+    }
+
+    private static final class Budget {
+        // Expired on first use
+        long periodStart = System.nanoTime() - PERIOD_NANOS;
+        int remaining;
+    }
+
+    private KeyValueStatus resolveAndRecord(short code) {
+        StatusResolutionEvent event = new StatusResolutionEvent();
+        event.begin();
+        KeyValueStatus status = delegate.resolve(code);
+        event.end();
+        if (event.shouldCommit()) {
+            event.code = code;
+            event.status = status.name();
+            event.resolver = resolverName;
+            event.commit();
+        }
+        return status;
+    }
+
+    //---------------------------------------------------------------------------------------------
+    // Recording state
+
+    private static void updateEnabled() {
+        // An event instance reports whether any running recording enables its type
+        countEnabled = new StatusCountEvent().isEnabled();
+        resolutionEnabled = new StatusResolutionEvent().isEnabled();
+        if (!countEnabled) {
+            // Don't report counts from a previous recording in the next one
+            counts.snapshotAndReset();
+        }
+    }
+
+    private static void emitCounts() {
+        long[] snapshot = counts.snapshotAndReset();
+        KeyValueStatus[] values = KeyValueStatus.values();
+        for (int i = 0; i < snapshot.length; i++) {
+            if (snapshot[i] != 0) {
+                StatusCountEvent event = new StatusCountEvent();
+                event.status = values[i].name();
+                event.code = values[i].code();
+                event.count = snapshot[i];
+                event.commit();
+            }
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package net.bluxte.experiments.couchbase_keyvalue;
+
+import java.io.Closeable;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Schedules retries of failed requests on a {@link HashedTimerWheel}, with a backoff policy per status.
+ *
+ * Policies are indexed by status ordinal. By default, only retryable statuses have one:
+ * <ul>
+ *     <li>{@code ERR_TEMP_FAIL}: exponential from 1ms up to 500ms, the node is briefly overloaded</li>
+ *     <li>{@code ERR_BUSY}: exponential from 10ms up to 2s</li>
+ *     <li>{@code ERR_NOT_MY_VBUCKET}: short delays for up to a few seconds, while a new cluster
+ *     configuration is fetched during a rebalance</li>
+ *     <li>{@code ERR_NOT_INITIALIZED}: every 100ms for up to 5s, while the node warms up</li>
+ * </ul>
+ * All delays are jittered, so that requests failed together aren't retried together.
+ */
+public class RetryScheduler implements Closeable {
+
+    /**
+     * Delay before each retry attempt.
+     */
+    public static final class BackoffPolicy {
+        private final long initialDelayNanos;
+        private final long maxDelayNanos;
+        private final double multiplier;
+        private final int maxAttempts;
+        private final double jitter;
+
+        private BackoffPolicy(long initialDelayNanos, long maxDelayNanos, double multiplier, int maxAttempts, double jitter) {
+            if (jitter < 0 || jitter > 1) {
+                throw new IllegalArgumentException("Jitter must be between 0 and 1: " + jitter);
+            }
+            this.initialDelayNanos = initialDelayNanos;
+            this.maxDelayNanos = maxDelayNanos;
+            this.multiplier = multiplier;
+            this.maxAttempts = maxAttempts;
+            this.jitter = jitter;
+        }
+
+        /**
+         * Delays growing by {@code multiplier} from {@code initialDelay} up to {@code maxDelay}.
+         *
+         * @param jitter fraction of each delay that is random: with 0.5, a delay of 10ms is between 5 and 10ms.
+         */
+        public static BackoffPolicy exponential(long initialDelay, long maxDelay, TimeUnit unit, double multiplier,
+                                                int maxAttempts, double jitter) {
+            return new BackoffPolicy(unit.toNanos(initialDelay), unit.toNanos(maxDelay), multiplier, maxAttempts, jitter);
+        }
+
+        /**
+         * The same delay for each attempt.
+         */
+        public static BackoffPolicy fixed(long delay, TimeUnit unit, int maxAttempts, double jitter) {
+            return new BackoffPolicy(unit.toNanos(delay), unit.toNanos(delay), 1.0, maxAttempts, jitter);
+        }
+
+        public int maxAttempts() {
+            return maxAttempts;
+        }
+
+        /**
+         * Delay before retry {@code attempt}, starting at 1.
+         */
+        public long delayNanos(int attempt) {
+            double delay = initialDelayNanos * Math.pow(multiplier, attempt - 1);
+            long base = delay >= maxDelayNanos ? maxDelayNanos : (long) delay;
+            return base - (long) (base * jitter * ThreadLocalRandom.current().nextDouble());
+        }
+    }
+
+    private final HashedTimerWheel timer;
+    private final BackoffPolicy[] policies = new BackoffPolicy[KeyValueStatus.values().length];
+
+    /**
+     * A scheduler with the default policies, on a timer with 1ms ticks.
+     */
+    public RetryScheduler() {
+        this(new HashedTimerWheel(1, TimeUnit.MILLISECONDS, 4096));
+    }
+
+    public RetryScheduler(HashedTimerWheel timer) {
+        this.timer = timer;
+        policy(KeyValueStatus.ERR_TEMP_FAIL,
+                BackoffPolicy.exponential(1, 500, TimeUnit.MILLISECONDS, 2.0, 10, 0.5));
+        policy(KeyValueStatus.ERR_BUSY,
+                BackoffPolicy.exponential(10, 2000, TimeUnit.MILLISECONDS, 2.0, 10, 0.5));
+        policy(KeyValueStatus.ERR_NOT_MY_VBUCKET,
+                BackoffPolicy.exponential(1, 100, TimeUnit.MILLISECONDS, 1.5, 30, 0.2));
+        policy(KeyValueStatus.ERR_NOT_INITIALIZED,
+                BackoffPolicy.fixed(100, TimeUnit.MILLISECONDS, 50, 0.1));
+    }
+
+    /**
+     * Set the policy of {@code status}, or remove it with {@code null} so that it isn't retried.
+     */
+    public RetryScheduler policy(KeyValueStatus status, BackoffPolicy policy) {
+        policies[status.ordinal()] = policy;
+        return this;
+    }
+
+    /**
+     * The policy of {@code status}, or {@code null} if it isn't retried.
+     */
+    public BackoffPolicy policy(KeyValueStatus status) {
+        return policies[status.ordinal()];
+    }
+
+    /**
+     * Schedule retry {@code attempt} (starting at 1) of a request that failed with {@code status}.
+     *
+     * @return the retry's timeout, to cancel it, or {@code null} if {@code status} isn't retried or the
+     * policy's attempts are exhausted.
+     */
+    public HashedTimerWheel.Timeout schedule(KeyValueStatus status, int attempt, Runnable retry) {
+        BackoffPolicy policy = policies[status.ordinal()];
+        if (policy == null || attempt > policy.maxAttempts) {
+            return null;
+        }
+        return timer.schedule(retry, policy.delayNanos(attempt), TimeUnit.NANOSECONDS);
+    }
+
+    public long pending() {
+        return timer.pending();
+    }
+
+    @Override
+    public void close() {
+        timer.close();
+    }
+}
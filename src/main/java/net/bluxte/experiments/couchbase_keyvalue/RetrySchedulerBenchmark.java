@@ -0,0 +1,214 @@
+package net.bluxte.experiments.couchbase_keyvalue;
+
+import org.HdrHistogram.Histogram;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Scheduling a retry with {@link RetryScheduler} compared to a {@link ScheduledThreadPoolExecutor}, with
+ * many retries already pending as during a rebalance. Each operation schedules a retry and cancels it, as
+ * when the request finally succeeds, so that the number of pending retries stays the same. Pending retries
+ * are scheduled directly on the scheduler's timer, leaving the policies of all statuses as in production.
+ *
+ * With the wheel, an operation only adds to the timer's queues: moving timeouts to buckets and removing
+ * cancelled ones happens on the timer thread, and isn't measured. The backlog of these queues is printed
+ * after each iteration, and the benchmark fails if it exceeds {@value #MAX_BACKLOG}, i.e. if the timer
+ * thread doesn't keep up with the measured rate.
+ *
+ * {@link #main(String[])} measures timer accuracy, i.e. how late retries run, with the same load.
+ */
+@State(Scope.Benchmark)
+public class RetrySchedulerBenchmark {
+
+    private static final Runnable NOOP = () -> {};
+
+    static final int MAX_BACKLOG = 1_000_000;
+
+    @Param({
+            "wheel",
+            "executor"
+    })
+    public String scheduler;
+
+    @Param({
+            "10000",
+            "1000000"
+    })
+    public int pending;
+
+    private HashedTimerWheel timer;
+    private RetryScheduler retryScheduler;
+    private ScheduledThreadPoolExecutor executor;
+    private RetryScheduler.BackoffPolicy policy;
+
+    @Setup
+    public void setup() {
+        timer = newTimer();
+        retryScheduler = new RetryScheduler(timer);
+        policy = retryScheduler.policy(KeyValueStatus.ERR_TEMP_FAIL);
+        if (scheduler.equals("executor")) {
+            executor = newExecutor();
+        }
+        fill(timer, executor, pending);
+    }
+
+    @TearDown(Level.Iteration)
+    public void checkBacklog() {
+        long backlog = timer.backlog();
+        System.out.println("Timer backlog: " + backlog);
+        if (backlog > MAX_BACKLOG) {
+            throw new IllegalStateException("Timer thread is behind, with a backlog of " + backlog);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        retryScheduler.close();
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    @Benchmark
+    public boolean scheduleAndCancel() {
+        return scheduleAndCancel(KeyValueStatus.ERR_TEMP_FAIL, ThreadLocalRandom.current().nextInt(1, 10));
+    }
+
+    @Benchmark
+    @Threads(4)
+    public boolean scheduleAndCancelConcurrent() {
+        return scheduleAndCancel(KeyValueStatus.ERR_TEMP_FAIL, ThreadLocalRandom.current().nextInt(1, 10));
+    }
+
+    private boolean scheduleAndCancel(KeyValueStatus status, int attempt) {
+        if (executor == null) {
+            return retryScheduler.schedule(status, attempt, NOOP).cancel();
+        } else {
+            return executor.schedule(NOOP, policy.delayNanos(attempt), TimeUnit.NANOSECONDS).cancel(false);
+        }
+    }
+
+    private static HashedTimerWheel newTimer() {
+        // Same as RetryScheduler's default timer
+        return new HashedTimerWheel(1, TimeUnit.MILLISECONDS, 4096);
+    }
+
+    private static ScheduledThreadPoolExecutor newExecutor() {
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1);
+        // Without this, cancelled tasks stay in the queue until their deadline
+        executor.setRemoveOnCancelPolicy(true);
+        return executor;
+    }
+
+    /**
+     * Add retries that stay pending for the duration of a run, due between half an hour and an hour from now.
+     */
+    private static void fill(HashedTimerWheel timer, ScheduledThreadPoolExecutor executor, int count) {
+        long hour = TimeUnit.HOURS.toNanos(1);
+        for (int i = 0; i < count; i++) {
+            long delay = ThreadLocalRandom.current().nextLong(hour / 2, hour);
+            if (executor == null) {
+                timer.schedule(NOOP, delay, TimeUnit.NANOSECONDS);
+            } else {
+                executor.schedule(NOOP, delay, TimeUnit.NANOSECONDS);
+            }
+        }
+    }
+
+    //---------------------------------------------------------------------------------------------
+    // Timer accuracy
+
+    /**
+     * Schedule retries with the default ERR_TEMP_FAIL policy on top of a million pending ones, and print
+     * percentiles of how late they run.
+     */
+    public static void main(String[] args) throws InterruptedException {
+        int pending = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int retries = args.length > 1 ? Integer.parseInt(args[1]) : 100_000;
+
+        System.out.printf("Lateness (us) of %d retries with %d pending%n", retries, pending);
+        System.out.printf("%-10s %9s %9s %9s %9s %9s%n", "", "p50", "p90", "p99", "p99.9", "max");
+        for (String scheduler: new String[] { "wheel", "executor" }) {
+            HashedTimerWheel timer = newTimer();
+            RetryScheduler retryScheduler = new RetryScheduler(timer);
+            ScheduledThreadPoolExecutor executor = scheduler.equals("executor") ? newExecutor() : null;
+            fill(timer, executor, pending);
+
+            Histogram lateness = accuracy(retryScheduler.policy(KeyValueStatus.ERR_TEMP_FAIL), timer, executor, retries);
+            System.out.printf("%-10s %9.1f %9.1f %9.1f %9.1f %9.1f%n", scheduler,
+                    lateness.getValueAtPercentile(50) / 1000.0,
+                    lateness.getValueAtPercentile(90) / 1000.0,
+                    lateness.getValueAtPercentile(99) / 1000.0,
+                    lateness.getValueAtPercentile(99.9) / 1000.0,
+                    lateness.getMaxValue() / 1000.0);
+
+            retryScheduler.close();
+            if (executor != null) {
+                executor.shutdownNow();
+            }
+        }
+    }
+
+    private static Histogram accuracy(RetryScheduler.BackoffPolicy policy, HashedTimerWheel timer,
+                                      ScheduledThreadPoolExecutor executor, int retries) throws InterruptedException {
+        // Retries run on a single thread with both schedulers
+        Histogram lateness = new Histogram(3);
+        CountDownLatch done = new CountDownLatch(retries);
+
+        for (int i = 0; i < retries; i++) {
+            int attempt = 1 + i % policy.maxAttempts();
+            long delay = policy.delayNanos(attempt);
+            long deadline = System.nanoTime() + delay;
+            Runnable retry = () -> {
+                lateness.recordValue(Math.max(0, System.nanoTime() - deadline));
+                done.countDown();
+            };
+            if (executor == null) {
+                timer.schedule(retry, delay, TimeUnit.NANOSECONDS);
+            } else {
+                executor.schedule(retry, delay, TimeUnit.NANOSECONDS);
+            }
+        }
+
+        done.await();
+        return lateness;
+    }
+}
+
+/*
+
+Single core VM, JDK 17, short run (1 fork, 3 iterations of 2s) with 1M pending retries. Schedule and
+cancel on the wheel only enqueue the timeout, while the executor's heap is locked and reordered for both.
+
+With one thread, the timer thread keeps up: the backlog stays under 2000 timeouts at the end of each
+iteration, so the wheel's 4.2M ops/s against 0.8M for the executor is a sustainable rate. With 4 threads
+on a single core, the timer thread only gets a fifth of the CPU: the backlog grows by about 300k timeouts
+per iteration, and the wheel fails the backlog check at the third iteration. Its 2.4M ops/s are then
+queued work rather than throughput, and can't be compared with the executor.
+
+Benchmark                                            (pending)  (scheduler)   Mode  Cnt        Score         Error  Units
+RetrySchedulerBenchmark.scheduleAndCancel              1000000        wheel  thrpt    3  4171895.986 ± 1509229.816  ops/s
+RetrySchedulerBenchmark.scheduleAndCancel              1000000     executor  thrpt    3   780936.961 ±  492527.259  ops/s
+RetrySchedulerBenchmark.scheduleAndCancelConcurrent    1000000        wheel  thrpt         (failed, backlog 1023455)
+RetrySchedulerBenchmark.scheduleAndCancelConcurrent    1000000     executor  thrpt    3  2113366.672 ± 1832045.560  ops/s
+
+Lateness with main(): the wheel is late by up to a tick plus the time to transfer a burst of new timeouts,
+the executor falls behind as scheduling 100k retries on a 1M entries heap contends with its thread.
+
+Lateness (us) of 100000 retries with 1000000 pending
+                 p50       p90       p99     p99.9       max
+wheel          813.6    1851.4    7479.3    9420.8   10084.4
+executor    169082.9  202506.2  204734.5  205127.7  205127.7
+
+*/
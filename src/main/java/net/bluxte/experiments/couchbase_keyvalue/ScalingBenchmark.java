@@ -0,0 +1,221 @@
+package net.bluxte.experiments.couchbase_keyvalue;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Multi-core scaling of all resolvers: allocation in {@code valueOfLoop} (which clones {@code values()}
+ * on every call) and boxing in {@code valueOfLookupMap} put pressure on the GC when many event-loop
+ * threads decode at once.
+ *
+ * Run {@link #main(String[])} to execute the suite at 1, 2, 4... up to the number of available
+ * processors, with the GC profiler, and print throughput scaling and allocation per operation.
+ *
+ * The {@code decodeAndRecord} group is an asymmetric scenario: decoding threads, threads recording
+ * stats for the decoded statuses, and a thread taking stats snapshots every
+ * {@value #SNAPSHOT_INTERVAL_MILLIS}ms like a metrics reporter. JMH runs groups in whole copies of 4 threads,
+ * so {@link #main(String[])} scales it by number of groups rather than by number of threads.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ScalingBenchmark {
+
+    @Benchmark
+    public KeyValueStatus loopNoFastPath(CodeSequence codes) {
+        return KeyValueStatus.valueOfLoop(codes.next());
+    }
+
+    @Benchmark
+    public KeyValueStatus loopFastPath(CodeSequence codes) {
+        return KeyValueStatus.valueOf(codes.next());
+    }
+
+    @Benchmark
+    public KeyValueStatus loopOnConstantArray(CodeSequence codes) {
+        return KeyValueStatus.valueOfLoopOnConstantArray(codes.next());
+    }
+
+    @Benchmark
+    public KeyValueStatus lookupMap(CodeSequence codes) {
+        return KeyValueStatus.valueOfLookupMap(codes.next());
+    }
+
+    @Benchmark
+    public KeyValueStatus lookupArray(CodeSequence codes) {
+        return KeyValueStatus.valueOfLookupArray(codes.next());
+    }
+
+    @Benchmark
+    public KeyValueStatus lookupPaged(CodeSequence codes) {
+        return KeyValueStatus.valueOfPagedLookup(codes.next());
+    }
+
+    @Benchmark
+    public KeyValueStatus lookupArrayUnchecked(CodeSequence codes) {
+        return KeyValueStatus.valueOfLookupArrayUnchecked(codes.next());
+    }
+
+    @Benchmark
+    public KeyValueStatus lookupBigSwitch(CodeSequence codes) {
+        return KeyValueStatus.valueOfBigSwitch(codes.next());
+    }
+
+    //---------------------------------------------------------------------------------------------
+    // Asymmetric scenario
+
+    static final int SNAPSHOT_INTERVAL_MILLIS = 10;
+
+    private static final String GROUP = "decodeAndRecord";
+    private static final int GROUP_THREADS = 4;
+
+    @State(Scope.Group)
+    public static class SharedStats {
+        final StatusStats stats = StatusStats.padded();
+    }
+
+    @Benchmark
+    @Group(GROUP)
+    @GroupThreads(2)
+    public KeyValueStatus decode(CodeSequence codes) {
+        return KeyValueStatus.valueOfLookupArray(codes.next());
+    }
+
+    @Benchmark
+    @Group(GROUP)
+    @GroupThreads(1)
+    public KeyValueStatus record(CodeSequence codes, SharedStats shared) {
+        KeyValueStatus status = KeyValueStatus.valueOfLookupArray(codes.next());
+        shared.stats.record(status);
+        return status;
+    }
+
+    @Benchmark
+    @Group(GROUP)
+    @GroupThreads(1)
+    public long[] snapshot(SharedStats shared) throws InterruptedException {
+        TimeUnit.MILLISECONDS.sleep(SNAPSHOT_INTERVAL_MILLIS);
+        return shared.stats.snapshotAndReset();
+    }
+
+    //---------------------------------------------------------------------------------------------
+    // Scaling runner
+
+    private static final String ALLOC_RATE_NORM = "gc.alloc.rate.norm";
+
+    public static void main(String[] args) throws RunnerException {
+        int maxThreads = Runtime.getRuntime().availableProcessors();
+        String workload = args.length > 0 ? args[0] : "zipf";
+
+        // benchmark -> threads -> [ops/us, B/op]
+        Map<String, Map<Integer, double[]>> results = new TreeMap<>();
+        List<Integer> threadCounts = new ArrayList<>();
+
+        for (int threads = 1; ; threads = Math.min(threads * 2, maxThreads)) {
+            threadCounts.add(threads);
+            run(workload, threads, false, threads, results);
+            if (threads == maxThreads) {
+                break;
+            }
+        }
+
+        // benchmark -> groups -> [ops/us, B/op]
+        Map<String, Map<Integer, double[]>> groupResults = new TreeMap<>();
+        List<Integer> groupCounts = new ArrayList<>();
+        int maxGroups = Math.max(1, maxThreads / GROUP_THREADS);
+
+        for (int groups = 1; ; groups = Math.min(groups * 2, maxGroups)) {
+            groupCounts.add(groups);
+            run(workload, groups * GROUP_THREADS, true, groups, groupResults);
+            if (groups == maxGroups) {
+                break;
+            }
+        }
+
+        System.out.println();
+        System.out.println("Throughput (ops/us), and scaling relative to 1 thread");
+        printTable(results, threadCounts, 0, true, "t");
+        System.out.println();
+        System.out.println("Allocation (B/op)");
+        printTable(results, threadCounts, 1, false, "t");
+        System.out.println();
+        System.out.println("Throughput (ops/us) of " + GROUP + ", and scaling relative to 1 group of "
+                + GROUP_THREADS + " threads");
+        printTable(groupResults, groupCounts, 0, true, "g");
+    }
+
+    /**
+     * Run either the per-thread benchmarks or the group with {@code threads} threads, and store results
+     * under {@code key}.
+     */
+    private static void run(String workload, int threads, boolean group, int key,
+                            Map<String, Map<Integer, double[]>> results) throws RunnerException {
+        OptionsBuilder builder = new OptionsBuilder();
+        if (group) {
+            builder.include(ScalingBenchmark.class.getName() + "\\." + GROUP + "$");
+        } else {
+            builder.include(ScalingBenchmark.class.getName() + "\\.").exclude("\\." + GROUP + "$");
+        }
+        Options opts = builder
+                .param("workload", workload)
+                .threads(threads)
+                .addProfiler(GCProfiler.class)
+                .forks(1)
+                .warmupIterations(5)
+                .measurementIterations(5)
+                .build();
+
+        for (RunResult result: new Runner(opts).run()) {
+            String name = result.getParams().getBenchmark();
+            name = name.substring(name.lastIndexOf('.') + 1);
+            Result alloc = result.getSecondaryResults().get(ALLOC_RATE_NORM);
+            results.computeIfAbsent(name, k -> new TreeMap<>()).put(key, new double[] {
+                    result.getPrimaryResult().getScore(),
+                    alloc == null ? Double.NaN : alloc.getScore()
+            });
+        }
+    }
+
+    private static void printTable(Map<String, Map<Integer, double[]>> results, List<Integer> threadCounts,
+                                   int column, boolean withScaling, String unit) {
+        System.out.printf("%-24s", "Benchmark");
+        for (int threads: threadCounts) {
+            System.out.printf(withScaling ? "%20s" : "%10s", threads + unit);
+        }
+        System.out.println();
+
+        for (Map.Entry<String, Map<Integer, double[]>> entry: results.entrySet()) {
+            System.out.printf("%-24s", entry.getKey());
+            double[] single = entry.getValue().get(1);
+            for (int threads: threadCounts) {
+                double[] values = entry.getValue().get(threads);
+                if (values == null) {
+                    System.out.printf(withScaling ? "%20s" : "%10s", "-");
+                } else if (withScaling) {
+                    System.out.printf("%12.1f (x%4.1f)", values[column], values[column] / single[column]);
+                } else {
+                    System.out.printf("%10.1f", values[column]);
+                }
+            }
+            System.out.println();
+        }
+    }
+}
@@ -0,0 +1,188 @@
+package net.bluxte.experiments.couchbase_keyvalue;
+
+/**
+ * An open-addressing map from {@code short} keys to objects, that never boxes keys. Meant for protocol
+ * code tables (statuses, opcodes, datatypes) that are built once and then only read.
+ *
+ * Collisions are resolved with linear probing, and the table is always kept at most half full so that
+ * probe sequences stay short. {@link #freeze()} rebuilds the table into a read-only layout, looking for
+ * a capacity up to twice the minimum where no key collides, so that each hit is a single probe. If there
+ * is none, it keeps the minimum capacity, where hits can take a few probes. Misses always probe until an
+ * empty slot.
+ *
+ * Null values are not allowed: a null slot marks an empty entry.
+ */
+public final class ShortObjectMap<V> {
+
+    // Largest capacity, relative to the minimum capacity, considered for a collision-free layout. Beyond
+    // that, the larger table costs more in cache misses than the probes it saves.
+    private static final int MAX_FROZEN_EXPANSION = 2;
+
+    private short[] keys;
+    private Object[] values;
+    private int size;
+    private boolean frozen;
+
+    public ShortObjectMap() {
+        this(8);
+    }
+
+    public ShortObjectMap(int expectedSize) {
+        allocate(capacityFor(expectedSize));
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isFrozen() {
+        return frozen;
+    }
+
+    /**
+     * Get the value associated to {@code key}, or {@code null} if there is none.
+     */
+    public V get(short key) {
+        return getOrDefault(key, null);
+    }
+
+    @SuppressWarnings("unchecked")
+    public V getOrDefault(short key, V defaultValue) {
+        final short[] keys = this.keys;
+        final Object[] values = this.values;
+        final int mask = keys.length - 1;
+
+        int i = hash(key) & mask;
+        while (true) {
+            Object value = values[i];
+            if (value == null) {
+                return defaultValue;
+            }
+            if (keys[i] == key) {
+                return (V) value;
+            }
+            i = (i + 1) & mask;
+        }
+    }
+
+    /**
+     * Associate {@code value} to {@code key}.
+     *
+     * @return the previous value associated to {@code key}, or {@code null} if there was none.
+     * @throws IllegalStateException if the map is frozen.
+     */
+    @SuppressWarnings("unchecked")
+    public V put(short key, V value) {
+        if (frozen) {
+            throw new IllegalStateException("Map is frozen");
+        }
+        if (value == null) {
+            throw new NullPointerException("Null values are not allowed");
+        }
+
+        int mask = keys.length - 1;
+        int i = hash(key) & mask;
+        while (values[i] != null) {
+            if (keys[i] == key) {
+                Object previous = values[i];
+                values[i] = value;
+                return (V) previous;
+            }
+            i = (i + 1) & mask;
+        }
+
+        keys[i] = key;
+        values[i] = value;
+        size++;
+        if (size * 2 > keys.length) {
+            rehash(keys.length * 2);
+        }
+        return null;
+    }
+
+    /**
+     * Make this map read-only and rebuild it into its most compact collision-free layout of at most
+     * twice the minimum capacity, or into the smallest half-full layout if there is none.
+     *
+     * @return this map.
+     */
+    public ShortObjectMap<V> freeze() {
+        if (frozen) {
+            return this;
+        }
+
+        int minCapacity = capacityFor(size);
+        int capacity = minCapacity;
+        while (capacity <= minCapacity * MAX_FROZEN_EXPANSION && !isCollisionFree(capacity)) {
+            capacity *= 2;
+        }
+        rehash(capacity <= minCapacity * MAX_FROZEN_EXPANSION ? capacity : minCapacity);
+
+        frozen = true;
+        return this;
+    }
+
+    private boolean isCollisionFree(int capacity) {
+        boolean[] used = new boolean[capacity];
+        for (int i = 0; i < keys.length; i++) {
+            if (values[i] != null) {
+                int slot = hash(keys[i]) & (capacity - 1);
+                if (used[slot]) {
+                    return false;
+                }
+                used[slot] = true;
+            }
+        }
+        return true;
+    }
+
+    private void rehash(int capacity) {
+        short[] oldKeys = keys;
+        Object[] oldValues = values;
+        allocate(capacity);
+
+        int mask = capacity - 1;
+        for (int j = 0; j < oldKeys.length; j++) {
+            if (oldValues[j] != null) {
+                int i = hash(oldKeys[j]) & mask;
+                while (values[i] != null) {
+                    i = (i + 1) & mask;
+                }
+                keys[i] = oldKeys[j];
+                values[i] = oldValues[j];
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new short[capacity];
+        values = new Object[capacity];
+    }
+
+    /**
+     * Smallest power of two that keeps {@code size} entries at most half full.
+     */
+    private static int capacityFor(int size) {
+        return Math.max(2, Integer.highestOneBit(Math.max(1, size) * 2 - 1) << 1);
+    }
+
+    private static int hash(short key) {
+        // Fibonacci hashing, folded so that the low bits used by the mask depend on all key bits
+        int h = (key & 0xffff) * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("{");
+        for (int i = 0; i < keys.length; i++) {
+            if (values[i] != null) {
+                if (sb.length() > 1) {
+                    sb.append(", ");
+                }
+                sb.append(keys[i]).append('=').append(values[i]);
+            }
+        }
+        return sb.append('}').toString();
+    }
+}
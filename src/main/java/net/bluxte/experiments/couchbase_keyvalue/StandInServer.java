@@ -0,0 +1,218 @@
+package net.bluxte.experiments.couchbase_keyvalue;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+
+/**
+ * A loopback stand-in for a KeyValue node, speaking just enough of the memcached binary protocol to
+ * answer every request with a status taken from a configured sequence.
+ *
+ * Requests are only checked for their magic byte and framed with their body length. Each response has
+ * the opcode and opaque of its request, the next status of the sequence, and a value of a fixed size.
+ * All connections are served by a single selector thread.
+ */
+public class StandInServer implements Closeable {
+
+    private static final byte MAGIC_REQUEST = (byte) 0x80;
+    private static final byte MAGIC_RESPONSE = (byte) 0x81;
+
+    private static final int HEADER_SIZE = BulkStatusDecoder.HEADER_SIZE;
+    private static final int BUFFER_SIZE = 256 * 1024;
+
+    private final short[] statuses;
+    private final int valueSize;
+    private int nextStatus;
+
+    private final ServerSocketChannel server;
+    private final Selector selector;
+    private final InetSocketAddress address;
+    private final Thread thread;
+    private volatile boolean running = true;
+
+    /**
+     * Start a server on an ephemeral loopback port.
+     *
+     * @param statuses status codes of responses, used in sequence and cycled over.
+     * @param valueSize size of the value in each response.
+     */
+    public StandInServer(short[] statuses, int valueSize) throws IOException {
+        if (statuses.length == 0) {
+            throw new IllegalArgumentException("No status to respond with");
+        }
+        if (valueSize < 0 || HEADER_SIZE + valueSize > BUFFER_SIZE) {
+            throw new IllegalArgumentException("Invalid value size " + valueSize);
+        }
+        this.statuses = statuses.clone();
+        this.valueSize = valueSize;
+
+        selector = Selector.open();
+        server = ServerSocketChannel.open();
+        server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        server.configureBlocking(false);
+        server.register(selector, SelectionKey.OP_ACCEPT);
+        address = (InetSocketAddress) server.getLocalAddress();
+
+        thread = new Thread(this::run, "stand-in-server-" + address.getPort());
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public InetSocketAddress address() {
+        return address;
+    }
+
+    @Override
+    public void close() throws IOException {
+        running = false;
+        selector.wakeup();
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run() {
+        try {
+            while (running) {
+                selector.select();
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        accept();
+                    } else {
+                        ((Connection) key.attachment()).ready();
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (ClosedSelectorException e) {
+            // Closed while stopping
+        } finally {
+            for (SelectionKey key: selector.keys()) {
+                closeQuietly(key.channel());
+            }
+            closeQuietly(selector);
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel = server.accept();
+        if (channel != null) {
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            Connection connection = new Connection(channel);
+            connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            // Ignore
+        }
+    }
+
+    //---------------------------------------------------------------------------------------------
+    // Connections
+
+    private class Connection {
+        final SocketChannel channel;
+        SelectionKey key;
+
+        // Both buffers are kept ready to be filled
+        final ByteBuffer in = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        final ByteBuffer out = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+        Connection(SocketChannel channel) {
+            this.channel = channel;
+        }
+
+        void ready() {
+            try {
+                if (key.isWritable()) {
+                    flush();
+                }
+                if (key.isValid() && key.isReadable()) {
+                    if (channel.read(in) < 0) {
+                        close();
+                        return;
+                    }
+                }
+                respond();
+                flush();
+            } catch (IOException e) {
+                close();
+            }
+        }
+
+        /**
+         * Answer complete requests as long as there's room for the responses.
+         */
+        void respond() throws IOException {
+            in.flip();
+            while (in.remaining() >= HEADER_SIZE && out.remaining() >= HEADER_SIZE + valueSize) {
+                int pos = in.position();
+                if (in.get(pos) != MAGIC_REQUEST) {
+                    throw new IOException("Invalid request magic");
+                }
+                long bodyLength = in.getInt(pos + 8) & 0xFFFFFFFFL;
+                if (HEADER_SIZE + bodyLength > in.capacity()) {
+                    throw new IOException("Request too large");
+                }
+                if (in.remaining() < HEADER_SIZE + bodyLength) {
+                    break;
+                }
+
+                out.put(MAGIC_RESPONSE);
+                out.put(in.get(pos + 1)); // opcode
+                out.putShort((short) 0); // key length
+                out.put((byte) 0); // extras length
+                out.put((byte) 0); // data type
+                out.putShort(statuses[nextStatus]);
+                out.putInt(valueSize);
+                out.putInt(in.getInt(pos + 12)); // opaque
+                out.putLong(0L); // cas
+                out.position(out.position() + valueSize);
+
+                nextStatus = nextStatus + 1 == statuses.length ? 0 : nextStatus + 1;
+                in.position(pos + HEADER_SIZE + (int) bodyLength);
+            }
+            in.compact();
+        }
+
+        /**
+         * Write pending responses. If some are left, wait until the socket is writable rather than reading
+         * requests that couldn't be answered anyway.
+         */
+        void flush() throws IOException {
+            out.flip();
+            channel.write(out);
+            out.compact();
+            key.interestOps(out.position() > 0 ? SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+        }
+
+        void close() {
+            key.cancel();
+            closeQuietly(channel);
+        }
+    }
+}
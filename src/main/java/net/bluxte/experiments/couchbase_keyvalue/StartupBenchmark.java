@@ -0,0 +1,135 @@
+package net.bluxte.experiments.couchbase_keyvalue;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of the first call to each resolver in a fresh JVM, including the initialization of
+ * {@link KeyValueStatus} and of the tables of that resolver. Every measurement is a new fork, so this is
+ * what a short-lived tool or the first request of an application pays.
+ *
+ * With {@code eagerTables}, all tables are built at class initialization with
+ * {@link KeyValueStatus#initializeTables()}. This includes tables that were added after the move to holder
+ * classes, such as the 64k ordinals table and the UTF-8 names, so the difference with {@code none} is more
+ * than what lazy initialization saved at the time. The cost of each holder is reported separately with
+ * lazy tables: {@code FLAGS}, {@code ORDINALS} and {@code UTF8} initialize the holders that aren't used by
+ * a resolver.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+@Fork(20)
+public class StartupBenchmark {
+
+    private static final short CODE = 0x01;
+
+    @Param({
+            "none",
+            "LOOP",
+            "LOOP_FAST_PATH",
+            "LOOP_ON_CONSTANT_ARRAY",
+            "LOOKUP_MAP",
+            "SHORT_MAP",
+            "LOOKUP_ARRAY",
+            "LOOKUP_ARRAY_UNCHECKED",
+            "PAGED_LOOKUP",
+            "BIG_SWITCH",
+            "FLAGS",
+            "ORDINALS",
+            "UTF8"
+    })
+    public String resolver;
+
+    @Param({
+            "false",
+            "true"
+    })
+    public boolean eagerTables;
+
+    @Setup
+    public void setup() {
+        // KeyValueStatus isn't initialized yet: this class has no field of that type, and resolvers are
+        // called directly rather than through StatusResolvers whose initialization would load it
+        System.setProperty(KeyValueStatus.EAGER_TABLES_PROPERTY, Boolean.toString(eagerTables));
+    }
+
+    @Benchmark
+    public Object initAndFirstCall() {
+        switch (resolver) {
+            case "none":                   return KeyValueStatus.SUCCESS;
+            case "LOOP":                   return KeyValueStatus.valueOfLoop(CODE);
+            case "LOOP_FAST_PATH":         return KeyValueStatus.valueOf(CODE);
+            case "LOOP_ON_CONSTANT_ARRAY": return KeyValueStatus.valueOfLoopOnConstantArray(CODE);
+            case "LOOKUP_MAP":             return KeyValueStatus.valueOfLookupMap(CODE);
+            case "SHORT_MAP":              return KeyValueStatus.valueOfShortMap(CODE);
+            case "LOOKUP_ARRAY":           return KeyValueStatus.valueOfLookupArray(CODE);
+            case "LOOKUP_ARRAY_UNCHECKED": return KeyValueStatus.valueOfLookupArrayUnchecked(CODE);
+            case "PAGED_LOOKUP":           return KeyValueStatus.valueOfPagedLookup(CODE);
+            case "BIG_SWITCH":             return KeyValueStatus.valueOfBigSwitch(CODE);
+            case "FLAGS":                  return KeyValueStatus.flagsOf(CODE);
+            case "ORDINALS":               return KeyValueStatus.ordinalOf(CODE);
+            case "UTF8":                   return KeyValueStatus.SUCCESS.utf8Name();
+            default: throw new IllegalArgumentException("Unknown resolver " + resolver);
+        }
+    }
+}
+
+/*
+
+Single core VM, JDK 17, 20 forks, one sample per fork. Errors are 99.9% confidence intervals and are
+large: single shots in fresh JVMs are noisy, and some runs are several times slower than others.
+
+Initializing the enum alone (none) costs 0.8ms. With lazy tables, each holder adds its own cost to the
+first call that needs it:
+- LOOP, LOOP_FAST_PATH and BIG_SWITCH need no table and are within the noise of none.
+- PAGED_LOOKUP, LOOKUP_ARRAY_UNCHECKED and LOOKUP_ARRAY add 0.1 to 0.4ms, LOOP_ON_CONSTANT_ARRAY 0.5ms.
+- LOOKUP_MAP (HashMap) adds 0.7ms and SHORT_MAP (ShortObjectMap) 1.2ms.
+- FLAGS adds 0.7ms, ORDINALS (64k entries) 1.5ms and UTF8 0.4ms.
+
+Building all tables upfront (eagerTables=true) costs 7 to 12ms, about 6.4ms more than none. The holders
+measured one at a time add up to about 5.5ms, the rest being within the noise. Of these, ORDINALS and UTF8
+(1.9ms) were added after the move to holder classes: the tables that existed at the time, i.e. the maps,
+lookup arrays, pages and flags, account for about 3ms of the difference.
+
+Benchmark                          (eagerTables)              (resolver)  Mode  Cnt      Score      Error  Units
+StartupBenchmark.initAndFirstCall          false                    none    ss   20    849.434 ±  543.650  us/op
+StartupBenchmark.initAndFirstCall          false                    LOOP    ss   20    741.068 ±  209.148  us/op
+StartupBenchmark.initAndFirstCall          false          LOOP_FAST_PATH    ss   20   1733.846 ± 1868.535  us/op
+StartupBenchmark.initAndFirstCall          false  LOOP_ON_CONSTANT_ARRAY    ss   20   1393.142 ±  767.307  us/op
+StartupBenchmark.initAndFirstCall          false              LOOKUP_MAP    ss   20   1541.645 ±  353.164  us/op
+StartupBenchmark.initAndFirstCall          false               SHORT_MAP    ss   20   2040.377 ±  784.320  us/op
+StartupBenchmark.initAndFirstCall          false            LOOKUP_ARRAY    ss   20   1236.549 ±  254.698  us/op
+StartupBenchmark.initAndFirstCall          false  LOOKUP_ARRAY_UNCHECKED    ss   20    999.478 ±  176.134  us/op
+StartupBenchmark.initAndFirstCall          false            PAGED_LOOKUP    ss   20   1043.173 ±  706.796  us/op
+StartupBenchmark.initAndFirstCall          false              BIG_SWITCH    ss   20    760.385 ±  175.260  us/op
+StartupBenchmark.initAndFirstCall          false                   FLAGS    ss   20   1546.720 ±  987.215  us/op
+StartupBenchmark.initAndFirstCall          false                ORDINALS    ss   20   2337.268 ±  464.909  us/op
+StartupBenchmark.initAndFirstCall          false                    UTF8    ss   20   1229.572 ±  762.122  us/op
+StartupBenchmark.initAndFirstCall           true                    none    ss   20   7205.702 ± 2142.710  us/op
+StartupBenchmark.initAndFirstCall           true                    LOOP    ss   20   7460.258 ± 2465.974  us/op
+StartupBenchmark.initAndFirstCall           true          LOOP_FAST_PATH    ss   20   9042.107 ± 1764.855  us/op
+StartupBenchmark.initAndFirstCall           true  LOOP_ON_CONSTANT_ARRAY    ss   20   7822.957 ± 2173.833  us/op
+StartupBenchmark.initAndFirstCall           true              LOOKUP_MAP    ss   20   7119.772 ± 1811.271  us/op
+StartupBenchmark.initAndFirstCall           true               SHORT_MAP    ss   20   9235.062 ± 2364.297  us/op
+StartupBenchmark.initAndFirstCall           true            LOOKUP_ARRAY    ss   20   8584.552 ± 2739.273  us/op
+StartupBenchmark.initAndFirstCall           true  LOOKUP_ARRAY_UNCHECKED    ss   20  10226.262 ± 4196.107  us/op
+StartupBenchmark.initAndFirstCall           true            PAGED_LOOKUP    ss   20  11553.035 ± 2247.567  us/op
+StartupBenchmark.initAndFirstCall           true              BIG_SWITCH    ss   20   9586.755 ± 1827.282  us/op
+StartupBenchmark.initAndFirstCall           true                   FLAGS    ss   20  10684.827 ± 3501.584  us/op
+StartupBenchmark.initAndFirstCall           true                ORDINALS    ss   20  11401.010 ± 2783.352  us/op
+StartupBenchmark.initAndFirstCall           true                    UTF8    ss   20   9768.873 ± 1975.942  us/op
+
+*/
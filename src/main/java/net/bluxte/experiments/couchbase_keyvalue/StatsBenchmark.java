@@ -0,0 +1,125 @@
+package net.bluxte.experiments.couchbase_keyvalue;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+/**
+ * Overhead of recording status stats on top of {@link KeyValueStatus#valueOfLookupArray(short)}, with
+ * all threads sharing the same stats. Compare each variant to the {@code lookupArray} baseline with the
+ * same thread count.
+ */
+@State(Scope.Benchmark)
+public class StatsBenchmark {
+
+    // Mostly successes, with some misses and temporary failures
+    private static final short[] CODES = {
+            0x00, 0x00, 0x00, 0x00, 0x00, 0x01, 0x00, 0x86
+    };
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        int index;
+
+        short next() {
+            return CODES[index++ & (CODES.length - 1)];
+        }
+    }
+
+    private final StatusStats longAdder = StatusStats.longAdder();
+    private final StatusStats padded = StatusStats.padded();
+    private final StatusLatencyHistogram histogram = new StatusLatencyHistogram();
+
+    //---------------------------------------------------------------------------------------------
+    // Baseline
+
+    @Benchmark @Threads(1)
+    public KeyValueStatus lookupArray_1(Cursor cursor) {
+        return KeyValueStatus.valueOfLookupArray(cursor.next());
+    }
+
+    @Benchmark @Threads(4)
+    public KeyValueStatus lookupArray_4(Cursor cursor) {
+        return KeyValueStatus.valueOfLookupArray(cursor.next());
+    }
+
+    @Benchmark @Threads(Threads.MAX)
+    public KeyValueStatus lookupArray_max(Cursor cursor) {
+        return KeyValueStatus.valueOfLookupArray(cursor.next());
+    }
+
+    //---------------------------------------------------------------------------------------------
+    // LongAdder per status
+
+    @Benchmark @Threads(1)
+    public KeyValueStatus longAdder_1(Cursor cursor) {
+        return recordLongAdder(cursor);
+    }
+
+    @Benchmark @Threads(4)
+    public KeyValueStatus longAdder_4(Cursor cursor) {
+        return recordLongAdder(cursor);
+    }
+
+    @Benchmark @Threads(Threads.MAX)
+    public KeyValueStatus longAdder_max(Cursor cursor) {
+        return recordLongAdder(cursor);
+    }
+
+    //---------------------------------------------------------------------------------------------
+    // Striped padded long[]
+
+    @Benchmark @Threads(1)
+    public KeyValueStatus padded_1(Cursor cursor) {
+        return recordPadded(cursor);
+    }
+
+    @Benchmark @Threads(4)
+    public KeyValueStatus padded_4(Cursor cursor) {
+        return recordPadded(cursor);
+    }
+
+    @Benchmark @Threads(Threads.MAX)
+    public KeyValueStatus padded_max(Cursor cursor) {
+        return recordPadded(cursor);
+    }
+
+    //---------------------------------------------------------------------------------------------
+    // Striped padded long[] and latency histogram. The latency is a fake one, to avoid
+    // measuring System.nanoTime()
+
+    @Benchmark @Threads(1)
+    public KeyValueStatus paddedHistogram_1(Cursor cursor) {
+        return recordPaddedHistogram(cursor);
+    }
+
+    @Benchmark @Threads(4)
+    public KeyValueStatus paddedHistogram_4(Cursor cursor) {
+        return recordPaddedHistogram(cursor);
+    }
+
+    @Benchmark @Threads(Threads.MAX)
+    public KeyValueStatus paddedHistogram_max(Cursor cursor) {
+        return recordPaddedHistogram(cursor);
+    }
+
+    private KeyValueStatus recordLongAdder(Cursor cursor) {
+        KeyValueStatus status = KeyValueStatus.valueOfLookupArray(cursor.next());
+        longAdder.record(status);
+        return status;
+    }
+
+    private KeyValueStatus recordPadded(Cursor cursor) {
+        KeyValueStatus status = KeyValueStatus.valueOfLookupArray(cursor.next());
+        padded.record(status);
+        return status;
+    }
+
+    private KeyValueStatus recordPaddedHistogram(Cursor cursor) {
+        KeyValueStatus status = KeyValueStatus.valueOfLookupArray(cursor.next());
+        padded.record(status);
+        histogram.record(status, 100 + (cursor.index & 0x3ff));
+        return status;
+    }
+}
@@ -0,0 +1,55 @@
+package net.bluxte.experiments.couchbase_keyvalue;
+
+/**
+ * Category bit flags of {@link KeyValueStatus}, to take retry and error handling decisions with a load and
+ * a mask rather than a chain of {@code if} or {@code switch} on the enum.
+ *
+ * Flags are assigned to statuses in the protocol status definitions. A status can be in several categories,
+ * and unknown codes are in none.
+ */
+public final class StatusCategory {
+
+    private StatusCategory() {}
+
+    /** The operation succeeded */
+    public static final int SUCCESS = 0x01;
+
+    /** The operation can be retried as is, possibly after some delay */
+    public static final int RETRYABLE = 0x02;
+
+    /** The cluster topology changed, and the client needs a new configuration */
+    public static final int TOPOLOGY_CHANGE = 0x04;
+
+    /** Sub-document error, in the 0xc0-0xcc range */
+    public static final int SUBDOC = 0x08;
+
+    /** Authentication or authorization failure */
+    public static final int AUTH = 0x10;
+
+    /**
+     * Category flags of a raw status code, without resolving the enum.
+     */
+    public static int of(short code) {
+        return KeyValueStatus.flagsOf(code);
+    }
+
+    public static boolean isSuccess(short code) {
+        return (KeyValueStatus.flagsOf(code) & SUCCESS) != 0;
+    }
+
+    public static boolean isRetryable(short code) {
+        return (KeyValueStatus.flagsOf(code) & RETRYABLE) != 0;
+    }
+
+    public static boolean isTopologyChange(short code) {
+        return (KeyValueStatus.flagsOf(code) & TOPOLOGY_CHANGE) != 0;
+    }
+
+    public static boolean isSubdoc(short code) {
+        return (KeyValueStatus.flagsOf(code) & SUBDOC) != 0;
+    }
+
+    public static boolean isAuth(short code) {
+        return (KeyValueStatus.flagsOf(code) & AUTH) != 0;
+    }
+}
@@ -0,0 +1,33 @@
+package net.bluxte.experiments.couchbase_keyvalue;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Period;
+import jdk.jfr.StackTrace;
+
+/**
+ * Periodic JFR event: number of responses with a status since the previous period, emitted by
+ * {@link RecordingStatusResolver} for each status that was seen.
+ */
+@Name(StatusCountEvent.NAME)
+@Label("Status Count")
+@Description("Number of KeyValue responses with a status since the previous period")
+@Category({"Couchbase", "KeyValue"})
+@Period("1 s")
+@StackTrace(false)
+final class StatusCountEvent extends Event {
+
+    static final String NAME = "net.bluxte.kv.StatusCount";
+
+    @Label("Status")
+    String status;
+
+    @Label("Code")
+    short code;
+
+    @Label("Count")
+    long count;
+}
@@ -0,0 +1,57 @@
+package net.bluxte.experiments.couchbase_keyvalue;
+
+/**
+ * Maps failed statuses to exceptions, without paying for stack traces and message formatting on each
+ * failure: under failure storms (a rebalance returning ERR_NOT_MY_VBUCKET or ERR_TEMP_FAIL for every
+ * request) these dominate CPU and allocation.
+ *
+ * By default, a single stackless instance is shared for each status. For debugging, run with
+ * {@code -Dkv.status.exceptions.stackTraces=true} to get a new exception with a full stack trace for
+ * each failure.
+ */
+public final class StatusExceptions {
+
+    private StatusExceptions() {}
+
+    public static final String STACK_TRACES_PROPERTY = "kv.status.exceptions.stackTraces";
+
+    private static final boolean STACK_TRACES = Boolean.getBoolean(STACK_TRACES_PROPERTY);
+
+    private static final KeyValueStatusException[] cached;
+
+    static {
+        KeyValueStatus[] values = KeyValueStatus.values();
+        cached = new KeyValueStatusException[values.length];
+        for (KeyValueStatus value: values) {
+            cached[value.ordinal()] = new Stackless(value);
+        }
+    }
+
+    /**
+     * The exception for a failed status: a shared stackless instance, or a new instance with a stack
+     * trace if enabled with {@link #STACK_TRACES_PROPERTY}.
+     */
+    public static KeyValueStatusException forStatus(KeyValueStatus status) {
+        return STACK_TRACES ? new KeyValueStatusException(status) : cached[status.ordinal()];
+    }
+
+    /**
+     * The exception for a raw status code, resolved with {@link KeyValueStatus#valueOfLookupArray(short)}.
+     */
+    public static KeyValueStatusException forCode(short code) {
+        return forStatus(KeyValueStatus.valueOfLookupArray(code));
+    }
+
+    /**
+     * The shared stackless instance for a status, regardless of {@link #STACK_TRACES_PROPERTY}.
+     */
+    public static KeyValueStatusException cached(KeyValueStatus status) {
+        return cached[status.ordinal()];
+    }
+
+    private static class Stackless extends KeyValueStatusException {
+        Stackless(KeyValueStatus status) {
+            super(status, false);
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package net.bluxte.experiments.couchbase_keyvalue;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Writes status log records in UTF-8 without allocating, from the pre-encoded name and description of
+ * statuses: {@code NAME (0xcode): description\n}.
+ *
+ * The code is the one received, rather than the status code, so that unknown codes are logged as is. This
+ * is the format of {@link KeyValueStatusException} messages for known statuses only: for unknown codes,
+ * the exception has the code of {@link KeyValueStatus#UNKNOWN}, i.e. {@code 0xffff}.
+ */
+public final class StatusFormatter {
+
+    private StatusFormatter() {}
+
+    private static final byte[] HEX = {
+            '0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'a', 'b', 'c', 'd', 'e', 'f'
+    };
+
+    private static final byte[] CODE_PREFIX = {' ', '(', '0', 'x'};
+    private static final byte[] CODE_SUFFIX = {')', ':', ' '};
+
+    /**
+     * Size in bytes of the largest record.
+     */
+    public static final int MAX_RECORD_SIZE;
+
+    static {
+        int max = 0;
+        for (KeyValueStatus status: KeyValueStatus.values()) {
+            max = Math.max(max, recordSize((short) 0xffff, status));
+        }
+        MAX_RECORD_SIZE = max;
+    }
+
+    /**
+     * Size in bytes of the record for {@code code} resolved as {@code status}.
+     */
+    public static int recordSize(short code, KeyValueStatus status) {
+        return status.utf8Name().length + CODE_PREFIX.length + hexDigits(code) + CODE_SUFFIX.length +
+                status.utf8Description().length + 1;
+    }
+
+    /**
+     * Write the record for {@code code} resolved as {@code status} at the position of {@code dst}.
+     *
+     * @return {@code false} if {@code dst} doesn't have enough room, in which case nothing is written.
+     */
+    public static boolean format(short code, KeyValueStatus status, ByteBuffer dst) {
+        if (dst.remaining() < recordSize(code, status)) {
+            return false;
+        }
+        dst.put(status.utf8Name());
+        dst.put(CODE_PREFIX);
+        int value = code & 0xffff;
+        for (int shift = (hexDigits(code) - 1) * 4; shift >= 0; shift -= 4) {
+            dst.put(HEX[(value >>> shift) & 0xf]);
+        }
+        dst.put(CODE_SUFFIX);
+        dst.put(status.utf8Description());
+        dst.put((byte) '\n');
+        return true;
+    }
+
+    // At least two digits, as with "%02x"
+    private static int hexDigits(short code) {
+        int value = code & 0xffff;
+        return value < 0x100 ? 2 : value < 0x1000 ? 3 : 4;
+    }
+}
@@ -0,0 +1,173 @@
+package net.bluxte.experiments.couchbase_keyvalue;
+
+import java.nio.ShortBuffer;
+import java.util.Arrays;
+
+/**
+ * Per-status counts and first failure of a column of raw status codes, such as the responses of a
+ * multi-get or bulk mutation, computed in a single pass without resolving the enum for each code.
+ *
+ * Columns are often mostly SUCCESS, whose code is 0: codes are read in blocks, and after a block of
+ * successes the next block is first OR-ed, and counted as a whole if the result is zero. The OR reduction
+ * has no branch, so long runs of successes are skipped several times faster than they are counted.
+ * Other blocks are counted code by code from {@link KeyValueStatus#ordinalOf(short)}, in interleaved
+ * counters so that consecutive identical codes don't wait for each other's increment. Columns with
+ * failures everywhere only pay for the OR of the block that follows a block of successes.
+ *
+ * The OR of blocks and the search for the first failure use the Vector API when it's available, see
+ * {@link BlockScan#preferred()}. Counting per status is a scatter, and stays scalar.
+ *
+ * Not thread-safe. An instance can be reused with {@link #reset()}.
+ */
+public class StatusHistogram {
+
+    private static final int BLOCK = 64;
+    private static final int LANES = 4;
+
+    private static final KeyValueStatus[] VALUES = KeyValueStatus.values();
+    private static final int SUCCESS = KeyValueStatus.SUCCESS.ordinal();
+
+    static {
+        if (KeyValueStatus.SUCCESS.code() != 0) {
+            throw new IllegalStateException("Block skipping requires a SUCCESS code of 0");
+        }
+    }
+
+    // LANES counters per ordinal: lane i of ordinal o is at o * LANES + i
+    private final int[] counts = new int[VALUES.length * LANES];
+    private int total;
+    private int firstFailure = -1;
+
+    // Copy of direct buffers, a multiple of BLOCK
+    private final short[] chunk = new short[BLOCK * 64];
+
+    private final BlockScan scan;
+
+    public StatusHistogram() {
+        this(BlockScan.preferred());
+    }
+
+    StatusHistogram(BlockScan scan) {
+        this.scan = scan;
+    }
+
+    /**
+     * Add {@code codes[from..to[} to this histogram.
+     *
+     * @return this histogram.
+     */
+    public StatusHistogram add(short[] codes, int from, int to) {
+        if (from < 0 || to > codes.length || from > to) {
+            throw new IndexOutOfBoundsException("Invalid range [" + from + ", " + to + "[ of " + codes.length);
+        }
+        final int[] counts = this.counts;
+        int i = from;
+
+        boolean skip = true;
+        for (; i <= to - BLOCK; i += BLOCK) {
+            if (skip && scan.or(codes, i, i + BLOCK) == 0) {
+                counts[SUCCESS * LANES] += BLOCK;
+                continue;
+            }
+            int or = 0;
+            for (int j = i; j < i + BLOCK; j += LANES) {
+                short c0 = codes[j], c1 = codes[j + 1], c2 = codes[j + 2], c3 = codes[j + 3];
+                counts[KeyValueStatus.ordinalOf(c0) * LANES]++;
+                counts[KeyValueStatus.ordinalOf(c1) * LANES + 1]++;
+                counts[KeyValueStatus.ordinalOf(c2) * LANES + 2]++;
+                counts[KeyValueStatus.ordinalOf(c3) * LANES + 3]++;
+                or |= c0 | c1 | c2 | c3;
+            }
+            skip = or == 0;
+            if (!skip && firstFailure < 0) {
+                firstFailure = firstFailure(codes, i, i + BLOCK, from);
+            }
+        }
+
+        if (firstFailure < 0) {
+            firstFailure = firstFailure(codes, i, to, from);
+        }
+        for (; i < to; i++) {
+            counts[KeyValueStatus.ordinalOf(codes[i]) * LANES]++;
+        }
+
+        total += to - from;
+        return this;
+    }
+
+    /**
+     * Add the remaining codes of {@code codes} to this histogram, without moving its position.
+     *
+     * @return this histogram.
+     */
+    public StatusHistogram add(ShortBuffer codes) {
+        if (codes.hasArray()) {
+            int from = codes.arrayOffset() + codes.position();
+            return add(codes.array(), from, from + codes.remaining());
+        }
+
+        // Direct or read-only buffers: copied in chunks to a scratch array, to skip blocks of successes
+        ShortBuffer source = codes.duplicate();
+        short[] chunk = this.chunk;
+        while (source.hasRemaining()) {
+            int length = Math.min(chunk.length, source.remaining());
+            source.get(chunk, 0, length);
+            add(chunk, 0, length);
+        }
+        return this;
+    }
+
+    /**
+     * Index relative to {@code base} of the first non-SUCCESS code in {@code codes[from..to[}, or -1.
+     */
+    private int firstFailure(short[] codes, int from, int to, int base) {
+        int i = scan.firstNonZero(codes, from, to);
+        return i < 0 ? -1 : total + i - base;
+    }
+
+    /**
+     * Number of codes resolved as {@code status}.
+     */
+    public int count(KeyValueStatus status) {
+        int offset = status.ordinal() * LANES;
+        return counts[offset] + counts[offset + 1] + counts[offset + 2] + counts[offset + 3];
+    }
+
+    /**
+     * Number of codes in any of the given {@link StatusCategory} flags.
+     */
+    public int countOf(int categories) {
+        int result = 0;
+        for (KeyValueStatus status: VALUES) {
+            if (status.is(categories)) {
+                result += count(status);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Number of codes added since creation or the last {@link #reset()}.
+     */
+    public int total() {
+        return total;
+    }
+
+    public int failures() {
+        return total - count(KeyValueStatus.SUCCESS);
+    }
+
+    /**
+     * Index, among all codes added, of the first code that isn't {@link KeyValueStatus#SUCCESS}, or -1 if
+     * there is none.
+     */
+    public int firstFailure() {
+        return firstFailure;
+    }
+
+    public void reset() {
+        Arrays.fill(counts, 0);
+        total = 0;
+        firstFailure = -1;
+    }
+}
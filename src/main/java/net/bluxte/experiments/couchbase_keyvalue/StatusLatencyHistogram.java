@@ -0,0 +1,46 @@
+package net.bluxte.experiments.couchbase_keyvalue;
+
+/**
+ * Per-status latency histogram, with power-of-two buckets: bucket {@code b} counts latencies in
+ * {@code [2^(b-1), 2^b)} nanoseconds, and bucket 0 counts zero latencies.
+ *
+ * Like {@link StatusStats}, it is indexed by status ordinal and uses striped padded counters, so it
+ * can sit on the decode path next to the status counters.
+ */
+public class StatusLatencyHistogram {
+
+    public static final int BUCKETS = 64;
+
+    private final StripedCounters counters = new StripedCounters(KeyValueStatus.values().length * BUCKETS);
+
+    /**
+     * Record a latency for {@code status}. Negative latencies are counted in bucket 0.
+     */
+    public void record(KeyValueStatus status, long latencyNanos) {
+        counters.increment(status.ordinal() * BUCKETS + bucket(latencyNanos));
+    }
+
+    /**
+     * Bucket counts since the previous snapshot, indexed by status ordinal then bucket.
+     */
+    public long[][] snapshotAndReset() {
+        long[] flat = counters.snapshotAndReset();
+        long[][] result = new long[flat.length / BUCKETS][BUCKETS];
+        for (int i = 0; i < result.length; i++) {
+            System.arraycopy(flat, i * BUCKETS, result[i], 0, BUCKETS);
+        }
+        return result;
+    }
+
+    /**
+     * The lowest latency, in nanoseconds, counted in {@code bucket}.
+     */
+    public static long bucketLowerBound(int bucket) {
+        return bucket == 0 ? 0 : 1L << (bucket - 1);
+    }
+
+    static int bucket(long latencyNanos) {
+        // Latencies at or above 2^62 ns (146 years) end up in the last bucket
+        return latencyNanos <= 0 ? 0 : Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(latencyNanos));
+    }
+}
@@ -0,0 +1,115 @@
+package net.bluxte.experiments.couchbase_keyvalue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * A reusable ring buffer of status log records written with {@link StatusFormatter}, and drained to a
+ * channel such as a log file.
+ *
+ * Records are appended and drained without allocating. When the ring is full, new records are dropped
+ * and counted rather than blocking the caller: during an error storm it's better to lose log lines than
+ * to slow down requests.
+ *
+ * Not thread-safe: use one ring per thread, or drain it from the thread that fills it.
+ */
+public class StatusLogRing {
+
+    private final ByteBuffer buffer;
+    // Separate view for draining, so that appending and draining don't share position and limit
+    private final ByteBuffer drainView;
+    // Records that wrap around the end of the ring are formatted here, then copied in two parts
+    private final ByteBuffer scratch = ByteBuffer.allocate(StatusFormatter.MAX_RECORD_SIZE);
+    private final int capacity;
+    private final int mask;
+
+    private long head;
+    private long tail;
+    private long dropped;
+
+    /**
+     * @param capacity size in bytes of the ring, rounded up to a power of two and to at least the size
+     *        of the largest record.
+     */
+    public StatusLogRing(int capacity) {
+        if (capacity <= 0 || capacity > 1 << 30) {
+            throw new IllegalArgumentException("Invalid capacity: " + capacity);
+        }
+        capacity = Math.max(capacity, StatusFormatter.MAX_RECORD_SIZE);
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+        this.capacity = size;
+        this.mask = size - 1;
+        this.buffer = ByteBuffer.allocateDirect(size);
+        this.drainView = buffer.duplicate();
+    }
+
+    /**
+     * Append the record for {@code code} resolved as {@code status}.
+     *
+     * @return {@code false} if the ring is full and the record was dropped.
+     */
+    public boolean append(short code, KeyValueStatus status) {
+        int size = StatusFormatter.recordSize(code, status);
+        if (size > capacity - (tail - head)) {
+            dropped++;
+            return false;
+        }
+
+        int pos = (int) (tail & mask);
+        if (pos + size <= capacity) {
+            buffer.limit(capacity).position(pos);
+            StatusFormatter.format(code, status, buffer);
+        } else {
+            scratch.clear();
+            StatusFormatter.format(code, status, scratch);
+            scratch.flip();
+            int first = capacity - pos;
+            scratch.limit(first);
+            buffer.limit(capacity).position(pos);
+            buffer.put(scratch);
+            scratch.limit(size);
+            buffer.position(0);
+            buffer.put(scratch);
+        }
+        tail += size;
+        return true;
+    }
+
+    /**
+     * Write pending records to {@code channel}, until all are written or the channel doesn't accept more.
+     *
+     * @return the number of bytes written.
+     */
+    public long drainTo(WritableByteChannel channel) throws IOException {
+        long start = head;
+        while (head < tail) {
+            int pos = (int) (head & mask);
+            int length = (int) Math.min(tail - head, capacity - pos);
+            drainView.limit(pos + length).position(pos);
+            int written = channel.write(drainView);
+            if (written <= 0) {
+                break;
+            }
+            head += written;
+        }
+        return head - start;
+    }
+
+    /**
+     * Number of bytes waiting to be drained.
+     */
+    public int pending() {
+        return (int) (tail - head);
+    }
+
+    /**
+     * Number of records dropped because the ring was full.
+     */
+    public long dropped() {
+        return dropped;
+    }
+}
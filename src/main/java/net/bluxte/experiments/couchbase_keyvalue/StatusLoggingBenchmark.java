@@ -0,0 +1,144 @@
+package net.bluxte.experiments.couchbase_keyvalue;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Writing a log record for failed statuses to a buffer, as an appender would:
+ * <ul>
+ *     <li>{@code stringFormat}: the message of {@link KeyValueStatusException}, encoded to UTF-8</li>
+ *     <li>{@code stringConcat}: the name and description concatenated, encoded to UTF-8</li>
+ *     <li>{@code preEncoded}: {@link StatusFormatter}, from the pre-encoded name and description</li>
+ *     <li>{@code ring}: a {@link StatusLogRing}, drained to a channel that discards its input</li>
+ * </ul>
+ * Run with {@code -prof gc} to see allocation: the pre-encoded variants should allocate nothing.
+ */
+@State(Scope.Thread)
+public class StatusLoggingBenchmark {
+
+    @Param({
+            "zipf",
+            "subdoc"
+    })
+    public String workload;
+
+    private short[] codes;
+    private int index;
+
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(64 * 1024);
+    private final StatusLogRing ring = new StatusLogRing(64 * 1024);
+    private final WritableByteChannel sink = new NullChannel();
+
+    @Setup
+    public void setup() throws IOException {
+        // Only failures are logged
+        short[] generated = Workloads.create(workload, 65536, 1.0, "", 0);
+        int failures = 0;
+        for (short code: generated) {
+            if (code != KeyValueStatus.SUCCESS.code()) {
+                generated[failures++] = code;
+            }
+        }
+        if (failures == 0) {
+            throw new IllegalArgumentException("No failures in workload " + workload);
+        }
+        codes = new short[1024];
+        for (int i = 0; i < codes.length; i++) {
+            codes[i] = generated[i % failures];
+        }
+    }
+
+    private short nextCode() {
+        return codes[index++ & (codes.length - 1)];
+    }
+
+    private ByteBuffer buffer() {
+        if (buffer.remaining() < StatusFormatter.MAX_RECORD_SIZE) {
+            buffer.clear();
+        }
+        return buffer;
+    }
+
+    @Benchmark
+    public ByteBuffer stringFormat() {
+        short code = nextCode();
+        KeyValueStatus status = KeyValueStatus.valueOfLookupArray(code);
+        String line = String.format("%s (0x%02x): %s\n", status, code, status.description());
+        return buffer().put(line.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Benchmark
+    public ByteBuffer stringConcat() {
+        short code = nextCode();
+        KeyValueStatus status = KeyValueStatus.valueOfLookupArray(code);
+        String line = status + " (0x" + Integer.toHexString(code & 0xffff) + "): " + status.description() + "\n";
+        return buffer().put(line.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Benchmark
+    public boolean preEncoded() {
+        short code = nextCode();
+        return StatusFormatter.format(code, KeyValueStatus.valueOfLookupArray(code), buffer());
+    }
+
+    @Benchmark
+    public boolean ring() throws IOException {
+        short code = nextCode();
+        if (ring.pending() > 32 * 1024) {
+            ring.drainTo(sink);
+        }
+        return ring.append(code, KeyValueStatus.valueOfLookupArray(code));
+    }
+
+    private static class NullChannel implements WritableByteChannel {
+        @Override
+        public int write(ByteBuffer src) {
+            int length = src.remaining();
+            src.position(src.limit());
+            return length;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
+
+/*
+
+Single core VM, JDK 17, 1 fork. The pre-encoded variants allocate nothing (~10^-4 B/op, the profiler's
+noise) and are 3x faster than concatenation and 20x faster than String.format, which allocate 0.5 to
+1.3kB per record.
+
+Benchmark                                               (workload)   Mode  Cnt         Score         Error   Units
+StatusLoggingBenchmark.preEncoded                             zipf  thrpt    5  19201844.118 ± 1877998.184   ops/s
+StatusLoggingBenchmark.preEncoded:gc.alloc.rate.norm          zipf  thrpt    5        ≈ 10⁻⁴                  B/op
+StatusLoggingBenchmark.preEncoded                           subdoc  thrpt    5  17306307.840 ±  749061.067   ops/s
+StatusLoggingBenchmark.preEncoded:gc.alloc.rate.norm        subdoc  thrpt    5        ≈ 10⁻⁴                  B/op
+StatusLoggingBenchmark.ring                                   zipf  thrpt    5  24345768.723 ± 6975718.216   ops/s
+StatusLoggingBenchmark.ring:gc.alloc.rate.norm                zipf  thrpt    5        ≈ 10⁻⁴                  B/op
+StatusLoggingBenchmark.ring                                 subdoc  thrpt    5  16919426.859 ± 3904456.262   ops/s
+StatusLoggingBenchmark.ring:gc.alloc.rate.norm              subdoc  thrpt    5        ≈ 10⁻⁴                  B/op
+StatusLoggingBenchmark.stringConcat                           zipf  thrpt    5   5607935.306 ±  571622.725   ops/s
+StatusLoggingBenchmark.stringConcat:gc.alloc.rate.norm        zipf  thrpt    5       482.836 ±       0.001    B/op
+StatusLoggingBenchmark.stringConcat                         subdoc  thrpt    5   5418083.033 ± 1681969.254   ops/s
+StatusLoggingBenchmark.stringConcat:gc.alloc.rate.norm      subdoc  thrpt    5       688.570 ±       0.001    B/op
+StatusLoggingBenchmark.stringFormat                           zipf  thrpt    5    779710.031 ±  248290.095   ops/s
+StatusLoggingBenchmark.stringFormat:gc.alloc.rate.norm        zipf  thrpt    5      1167.697 ±       0.008    B/op
+StatusLoggingBenchmark.stringFormat                         subdoc  thrpt    5    917724.521 ±  329549.262   ops/s
+StatusLoggingBenchmark.stringFormat:gc.alloc.rate.norm      subdoc  thrpt    5      1358.977 ±       0.006    B/op
+
+*/
@@ -0,0 +1,260 @@
+package net.bluxte.experiments.couchbase_keyvalue;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Records every status code seen, with a timestamp and the request's opaque, to memory-mapped segment
+ * files that can be replayed with {@link StatusTraceReader}.
+ *
+ * Recording is a few stores in a mapped file, with nothing allocated: the page cache writes records to
+ * disk in the background. Threads claim a record slot with a single atomic increment, so that any number
+ * of them can record concurrently without locking or waiting. Segments are created and mapped ahead of
+ * time by a helper thread, which is woken up to map the next segment when the first record of a segment
+ * is claimed: recording threads only store into already mapped buffers. If the helper thread falls
+ * behind, records are dropped and counted rather than waiting for it.
+ *
+ * Segments are files of {@code segmentSize} bytes named {@code status-NNNNNN.rec} in the recording
+ * directory. Only the last {@code maxSegments} are kept: older ones are deleted when a new one is created.
+ *
+ * Record layout, 16 bytes in little-endian byte order, the native order of common platforms:
+ * <pre>
+ *   0  timestamp, nanoseconds since the epoch (long)
+ *   8  opaque (int)
+ *  12  status code (short)
+ *  14  1 for a written record, 0 for an unused slot (short)
+ * </pre>
+ * Records are complete once the recorder is closed: a reader running concurrently may see slots that
+ * are claimed but not written yet.
+ */
+public class StatusRecorder implements Closeable {
+
+    public static final int RECORD_SIZE = 16;
+
+    static final int TIMESTAMP_OFFSET = 0;
+    static final int OPAQUE_OFFSET = 8;
+    static final int CODE_OFFSET = 12;
+    static final int WRITTEN_OFFSET = 14;
+
+    static final String SEGMENT_PREFIX = "status-";
+    static final String SEGMENT_SUFFIX = ".rec";
+
+    /**
+     * Segments mapped at the same time: the next one, the current one, and previous ones still being
+     * written to by threads that claimed a slot before the rotation. This is also the minimum number of
+     * segments kept, so that no mapped segment is deleted.
+     */
+    public static final int MAPPED_SEGMENTS = 4;
+
+    private final Path directory;
+    private final long recordsPerSegment;
+    private final int maxSegments;
+
+    // Timestamps are nanoTime, offset to the epoch once at creation
+    private final long epochOffsetNanos;
+
+    private final AtomicLong nextRecord = new AtomicLong();
+    private final AtomicReferenceArray<Segment> segments = new AtomicReferenceArray<>(MAPPED_SEGMENTS);
+    // Claimed slots that couldn't be written
+    private final LongAdder dropped = new LongAdder();
+    // Records refused after close, without claiming a slot
+    private final LongAdder rejected = new LongAdder();
+    private volatile boolean closed;
+
+    // Segments are mapped up to requestedSegment by the mapper thread
+    private final Thread mapper;
+    private final AtomicLong requestedSegment = new AtomicLong();
+    private volatile long mappedSegment;
+    private volatile IOException mappingFailure;
+
+    /**
+     * Create a recorder writing to {@code directory}, which is created if needed. Segments of a previous
+     * recording in that directory are deleted.
+     *
+     * @param segmentSize size of segment files in bytes, rounded down to a multiple of the record size.
+     * @param maxSegments number of segments to keep, at least {@link #MAPPED_SEGMENTS}. Older ones are deleted.
+     */
+    public StatusRecorder(Path directory, int segmentSize, int maxSegments) throws IOException {
+        if (segmentSize < RECORD_SIZE) {
+            throw new IllegalArgumentException("Segment size is smaller than a record: " + segmentSize);
+        }
+        if (maxSegments < MAPPED_SEGMENTS) {
+            throw new IllegalArgumentException("At least " + MAPPED_SEGMENTS + " segments must be kept: " + maxSegments);
+        }
+        this.directory = Files.createDirectories(directory);
+        this.recordsPerSegment = segmentSize / RECORD_SIZE;
+        this.maxSegments = maxSegments;
+        this.epochOffsetNanos = TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis()) - System.nanoTime();
+
+        for (Path segment: StatusTraceReader.segments(directory)) {
+            Files.delete(segment);
+        }
+
+        // The first two segments are ready before recording starts
+        segments.set(0, new Segment(0, map(0)));
+        segments.set(1, new Segment(1, map(1)));
+        mappedSegment = 1;
+        requestedSegment.set(1);
+
+        mapper = new Thread(this::mapSegments, "status-recorder-mapper");
+        mapper.setDaemon(true);
+        mapper.start();
+    }
+
+    /**
+     * Record a status code received now.
+     *
+     * @return {@code false} if the record was dropped: the recorder is closed, or its segment isn't mapped.
+     */
+    public boolean record(short code, int opaque) {
+        return record(code, opaque, System.nanoTime() + epochOffsetNanos);
+    }
+
+    /**
+     * Record a status code with its timestamp, in nanoseconds since the epoch.
+     */
+    public boolean record(short code, int opaque, long timestampNanos) {
+        if (closed) {
+            rejected.increment();
+            return false;
+        }
+        long record = nextRecord.getAndIncrement();
+        long number = record / recordsPerSegment;
+        long slot = record % recordsPerSegment;
+        if (slot == 0) {
+            requestSegment(number + 1);
+        }
+
+        Segment segment = segments.get((int) (number % MAPPED_SEGMENTS));
+        if (segment == null || segment.number != number) {
+            // Not mapped yet, or already replaced as this thread is too far behind
+            requestSegment(number);
+            dropped.increment();
+            return false;
+        }
+
+        int offset = (int) slot * RECORD_SIZE;
+        MappedByteBuffer buffer = segment.buffer;
+        buffer.putLong(offset + TIMESTAMP_OFFSET, timestampNanos);
+        buffer.putInt(offset + OPAQUE_OFFSET, opaque);
+        buffer.putShort(offset + CODE_OFFSET, code);
+        buffer.putShort(offset + WRITTEN_OFFSET, (short) 1);
+        return true;
+    }
+
+    //---------------------------------------------------------------------------------------------
+    // Mapper thread
+
+    // Called once per segment, and when dropping records
+    private void requestSegment(long number) {
+        if (requestedSegment.getAndAccumulate(number, Math::max) < number) {
+            LockSupport.unpark(mapper);
+        }
+    }
+
+    private void mapSegments() {
+        while (!closed) {
+            long next = mappedSegment + 1;
+            if (next > requestedSegment.get()) {
+                LockSupport.park(this);
+                continue;
+            }
+            try {
+                segments.set((int) (next % MAPPED_SEGMENTS), new Segment(next, map(next)));
+                mappedSegment = next;
+            } catch (IOException e) {
+                // Recording threads drop records from now on, the failure is reported on close
+                mappingFailure = e;
+                return;
+            }
+        }
+    }
+
+    private MappedByteBuffer map(long number) throws IOException {
+        // At least MAPPED_SEGMENTS are kept, so this one isn't mapped anymore
+        long oldest = number - maxSegments;
+        if (oldest >= 0) {
+            Files.deleteIfExists(segmentPath(directory, oldest));
+        }
+        try (FileChannel channel = FileChannel.open(segmentPath(directory, number), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, recordsPerSegment * RECORD_SIZE);
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            return buffer;
+        }
+    }
+
+    static Path segmentPath(Path directory, long number) {
+        return directory.resolve(String.format("%s%06d%s", SEGMENT_PREFIX, number, SEGMENT_SUFFIX));
+    }
+
+    //---------------------------------------------------------------------------------------------
+
+    /**
+     * Number of slots claimed so far, including those of {@link #dropped()} records.
+     */
+    public long records() {
+        return nextRecord.get();
+    }
+
+    /**
+     * Number of claimed slots that weren't written, as their segment wasn't mapped.
+     */
+    public long dropped() {
+        return dropped.sum();
+    }
+
+    /**
+     * Number of records refused because the recorder was closed. They don't claim a slot.
+     */
+    public long rejected() {
+        return rejected.sum();
+    }
+
+    /**
+     * Stop recording and flush mapped segments to disk. Records being written by other threads at that
+     * time may be lost.
+     *
+     * @throws IOException if a segment couldn't be created or mapped during recording.
+     */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        LockSupport.unpark(mapper);
+        try {
+            mapper.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (int i = 0; i < MAPPED_SEGMENTS; i++) {
+            Segment segment = segments.get(i);
+            if (segment != null) {
+                segment.buffer.force();
+            }
+        }
+        if (mappingFailure != null) {
+            throw mappingFailure;
+        }
+    }
+
+    private static final class Segment {
+        final long number;
+        final MappedByteBuffer buffer;
+
+        Segment(long number, MappedByteBuffer buffer) {
+            this.number = number;
+            this.buffer = buffer;
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package net.bluxte.experiments.couchbase_keyvalue;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Cost of recording each status with a {@link StatusRecorder}, with all threads sharing the recorder, in
+ * 64MB segments of which 4 are kept in a temporary directory. Compare with the {@code lookupArray}
+ * baselines of {@link StatsBenchmark}.
+ *
+ * Records dropped while the recorder's helper thread maps the next segment return early and are cheaper:
+ * they are reported as the {@code dropped} secondary result, which should be zero.
+ *
+ * Run with {@code -prof gc} to check that recording allocates nothing.
+ */
+@State(Scope.Benchmark)
+public class StatusRecorderBenchmark {
+
+    private Path directory;
+    private StatusRecorder recorder;
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        CodeSequence codes;
+        int opaque;
+
+        @Setup
+        public void setup() throws IOException {
+            codes = new CodeSequence();
+            codes.workload = "zipf";
+            codes.skew = 1.0;
+            codes.traceFile = "";
+            codes.length = 65536;
+            codes.setup();
+        }
+    }
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Drops {
+        public long dropped;
+    }
+
+    @Setup
+    public void setup() throws IOException {
+        directory = Files.createTempDirectory("status-recorder");
+        recorder = new StatusRecorder(directory, 64 << 20, 4);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        recorder.close();
+        for (Path segment: StatusTraceReader.segments(directory)) {
+            Files.delete(segment);
+        }
+        Files.delete(directory);
+    }
+
+    @Benchmark @Threads(1)
+    public boolean record_1(Cursor cursor, Drops drops) {
+        return record(cursor, drops);
+    }
+
+    @Benchmark @Threads(4)
+    public boolean record_4(Cursor cursor, Drops drops) {
+        return record(cursor, drops);
+    }
+
+    private boolean record(Cursor cursor, Drops drops) {
+        if (recorder.record(cursor.codes.next(), cursor.opaque++)) {
+            return true;
+        }
+        drops.dropped++;
+        return false;
+    }
+}
+
+/*
+
+Single core VM, JDK 17, 3 forks, 5 warmup and 10 measurement iterations of 10s. Recording costs about 90ns
+per status, mostly the timestamp and the page faults of newly mapped pages (one every 256 records), with
+nothing allocated and no record dropped: segments are mapped by the recorder's helper thread ahead of the
+recording threads.
+
+record_4 is about 5% slower than record_1. On a single core the 4 threads are time-sliced rather than
+concurrent, so this doesn't measure contention on the claim counter: run on a multi-core machine for that.
+
+Benchmark                                             Mode  Cnt          Score          Error   Units
+StatsBenchmark.lookupArray_1                         thrpt   30  704552714.999 ± 53511369.043   ops/s
+StatsBenchmark.lookupArray_4                         thrpt   30  662635450.777 ± 58359345.542   ops/s
+StatsBenchmark.lookupArray_max                       thrpt   30  515735167.080 ± 54097991.061   ops/s
+StatusRecorderBenchmark.record_1                     thrpt   30   11331374.106 ±   400874.342   ops/s
+StatusRecorderBenchmark.record_1:dropped             thrpt   30            ≈ 0                      #
+StatusRecorderBenchmark.record_1:gc.alloc.rate.norm  thrpt   30          0.001 ±        0.001    B/op
+StatusRecorderBenchmark.record_4                     thrpt   30   10737156.443 ±   286567.361   ops/s
+StatusRecorderBenchmark.record_4:dropped             thrpt   30            ≈ 0                      #
+StatusRecorderBenchmark.record_4:gc.alloc.rate.norm  thrpt   30          0.001 ±        0.001    B/op
+
+*/
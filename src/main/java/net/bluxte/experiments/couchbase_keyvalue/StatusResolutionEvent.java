@@ -0,0 +1,30 @@
+package net.bluxte.experiments.couchbase_keyvalue;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JFR event for a single status resolution, sampled by {@link RecordingStatusResolver}.
+ */
+@Name(StatusResolutionEvent.NAME)
+@Label("Status Resolution")
+@Description("A sampled resolution of a KeyValue status code")
+@Category({"Couchbase", "KeyValue"})
+@StackTrace(false)
+final class StatusResolutionEvent extends Event {
+
+    static final String NAME = "net.bluxte.kv.StatusResolution";
+
+    @Label("Code")
+    short code;
+
+    @Label("Status")
+    String status;
+
+    @Label("Resolver")
+    String resolver;
+}
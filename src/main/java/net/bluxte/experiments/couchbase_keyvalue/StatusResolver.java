@@ -0,0 +1,15 @@
+package net.bluxte.experiments.couchbase_keyvalue;
+
+/**
+ * A strategy to resolve a raw status code to a {@link KeyValueStatus}.
+ *
+ * See {@link StatusResolvers} for the implementations of all strategies of {@link KeyValueStatus}, and
+ * how to select one without making calls polymorphic.
+ */
+public interface StatusResolver {
+
+    /**
+     * @return the status for {@code code}, or {@link KeyValueStatus#UNKNOWN} if there's none.
+     */
+    KeyValueStatus resolve(short code);
+}
@@ -0,0 +1,163 @@
+package net.bluxte.experiments.couchbase_keyvalue;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.ConstantCallSite;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+
+/**
+ * All resolution strategies of {@link KeyValueStatus} as {@link StatusResolver} implementations, and the
+ * strategy selected at startup with {@code -Dkv.status.resolver=<name>} (default is {@link #LOOKUP_ARRAY}).
+ *
+ * Calling the selected strategy through an interface would make call sites polymorphic as soon as
+ * several strategies are used in the same JVM. It is instead bound in constants that the JIT folds, so
+ * that calls are monomorphic and inlined:
+ * <ul>
+ *     <li>{@link #resolveSelected(short)} calls a static final field</li>
+ *     <li>{@link #resolveSelectedHandle(short)} invokes a {@link ConstantCallSite} on the strategy's static method</li>
+ * </ul>
+ */
+public enum StatusResolvers implements StatusResolver {
+
+    LOOP("valueOfLoop") {
+        @Override
+        public KeyValueStatus resolve(short code) {
+            return KeyValueStatus.valueOfLoop(code);
+        }
+    },
+
+    LOOP_FAST_PATH("valueOf") {
+        @Override
+        public KeyValueStatus resolve(short code) {
+            return KeyValueStatus.valueOf(code);
+        }
+    },
+
+    LOOP_ON_CONSTANT_ARRAY("valueOfLoopOnConstantArray") {
+        @Override
+        public KeyValueStatus resolve(short code) {
+            return KeyValueStatus.valueOfLoopOnConstantArray(code);
+        }
+    },
+
+    LOOKUP_MAP("valueOfLookupMap") {
+        @Override
+        public KeyValueStatus resolve(short code) {
+            return KeyValueStatus.valueOfLookupMap(code);
+        }
+    },
+
+    SHORT_MAP("valueOfShortMap") {
+        @Override
+        public KeyValueStatus resolve(short code) {
+            return KeyValueStatus.valueOfShortMap(code);
+        }
+    },
+
+    LOOKUP_ARRAY("valueOfLookupArray") {
+        @Override
+        public KeyValueStatus resolve(short code) {
+            return KeyValueStatus.valueOfLookupArray(code);
+        }
+    },
+
+    LOOKUP_ARRAY_UNCHECKED("valueOfLookupArrayUnchecked") {
+        @Override
+        public KeyValueStatus resolve(short code) {
+            return KeyValueStatus.valueOfLookupArrayUnchecked(code);
+        }
+    },
+
+    PAGED_LOOKUP("valueOfPagedLookup") {
+        @Override
+        public KeyValueStatus resolve(short code) {
+            return KeyValueStatus.valueOfPagedLookup(code);
+        }
+    },
+
+    BIG_SWITCH("valueOfBigSwitch") {
+        @Override
+        public KeyValueStatus resolve(short code) {
+            return KeyValueStatus.valueOfBigSwitch(code);
+        }
+    };
+
+    public static final String PROPERTY = "kv.status.resolver";
+
+    private final String methodName;
+
+    StatusResolvers(String methodName) {
+        this.methodName = methodName;
+    }
+
+    /**
+     * Name of the static method of {@link KeyValueStatus} implementing this strategy.
+     */
+    public String methodName() {
+        return methodName;
+    }
+
+    /**
+     * A {@code (short)KeyValueStatus} handle on the static method implementing this strategy.
+     */
+    public MethodHandle methodHandle() {
+        try {
+            return MethodHandles.lookup().findStatic(KeyValueStatus.class, methodName,
+                    MethodType.methodType(KeyValueStatus.class, short.class));
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            throw new IllegalStateException("No method " + methodName + " for " + this, e);
+        }
+    }
+
+    /**
+     * Find a strategy by name, ignoring case.
+     *
+     * @throws IllegalArgumentException if there's no strategy with this name.
+     */
+    public static StatusResolvers forName(String name) {
+        for (StatusResolvers resolver: values()) {
+            if (resolver.name().equalsIgnoreCase(name)) {
+                return resolver;
+            }
+        }
+        throw new IllegalArgumentException("Unknown status resolver '" + name + "'");
+    }
+
+    //---------------------------------------------------------------------------------------------
+    // Strategy selected at startup
+
+    private static final StatusResolvers SELECTED = forName(System.getProperty(PROPERTY, LOOKUP_ARRAY.name()));
+
+    private static final MethodHandle SELECTED_HANDLE;
+
+    static {
+        CallSite callSite = new ConstantCallSite(SELECTED.methodHandle());
+        SELECTED_HANDLE = callSite.dynamicInvoker();
+    }
+
+    public static StatusResolvers selected() {
+        return SELECTED;
+    }
+
+    /**
+     * Resolve {@code code} with the selected strategy, through a static final field.
+     */
+    public static KeyValueStatus resolveSelected(short code) {
+        return SELECTED.resolve(code);
+    }
+
+    /**
+     * Resolve {@code code} with the selected strategy, through a constant method handle.
+     */
+    public static KeyValueStatus resolveSelectedHandle(short code) {
+        try {
+            return (KeyValueStatus) SELECTED_HANDLE.invokeExact(code);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable t) {
+            // Strategies don't throw checked exceptions
+            throw new IllegalStateException(t);
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package net.bluxte.experiments.couchbase_keyvalue;
+
+/**
+ * Counts how often each {@link KeyValueStatus} is seen. Counters are indexed by the status ordinal, so
+ * that recording on the decode path is an array update, with no map lookup and no lock.
+ */
+public interface StatusStats {
+
+    /**
+     * Record one occurrence of {@code status}.
+     */
+    void record(KeyValueStatus status);
+
+    /**
+     * Count of each status since the previous snapshot, indexed by {@link KeyValueStatus#ordinal()}.
+     * Concurrent writers are not blocked, and none of their updates is lost.
+     */
+    long[] snapshotAndReset();
+
+    /**
+     * Stats based on striped and cache-line-padded {@code long} counters.
+     */
+    static StatusStats padded() {
+        return new PaddedStatusStats();
+    }
+
+    /**
+     * Stats based on one {@link java.util.concurrent.atomic.LongAdder} per status.
+     */
+    static StatusStats longAdder() {
+        return new LongAdderStatusStats();
+    }
+}
@@ -0,0 +1,141 @@
+package net.bluxte.experiments.couchbase_keyvalue;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import static net.bluxte.experiments.couchbase_keyvalue.StatusRecorder.CODE_OFFSET;
+import static net.bluxte.experiments.couchbase_keyvalue.StatusRecorder.OPAQUE_OFFSET;
+import static net.bluxte.experiments.couchbase_keyvalue.StatusRecorder.RECORD_SIZE;
+import static net.bluxte.experiments.couchbase_keyvalue.StatusRecorder.TIMESTAMP_OFFSET;
+import static net.bluxte.experiments.couchbase_keyvalue.StatusRecorder.WRITTEN_OFFSET;
+
+/**
+ * Reads back the records of a {@link StatusRecorder}, in the order of their slots, skipping unused slots.
+ *
+ * <pre>
+ * try (StatusTraceReader reader = new StatusTraceReader(path)) {
+ *     while (reader.next()) {
+ *         ... reader.code(), reader.opaque(), reader.timestampNanos()
+ *     }
+ * }
+ * </pre>
+ *
+ * Use {@link #readCodes(Path)} to replay a recording as a workload, with {@code recording} in
+ * {@link Workloads#create}.
+ */
+public class StatusTraceReader implements Closeable {
+
+    private final List<Path> segments;
+    private int nextSegment;
+
+    private MappedByteBuffer buffer;
+    private int offset;
+
+    /**
+     * @param path a recording directory, whose segments are read in order, or a single segment file.
+     */
+    public StatusTraceReader(Path path) throws IOException {
+        segments = Files.isDirectory(path) ? segments(path) : Collections.singletonList(path);
+    }
+
+    /**
+     * Move to the next record.
+     *
+     * @return {@code false} if there are no more records.
+     */
+    public boolean next() throws IOException {
+        while (true) {
+            if (buffer != null) {
+                offset += RECORD_SIZE;
+                while (offset + RECORD_SIZE <= buffer.limit()) {
+                    if (buffer.getShort(offset + WRITTEN_OFFSET) != 0) {
+                        return true;
+                    }
+                    offset += RECORD_SIZE;
+                }
+            }
+            if (nextSegment == segments.size()) {
+                buffer = null;
+                return false;
+            }
+            try (FileChannel channel = FileChannel.open(segments.get(nextSegment++))) {
+                buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                buffer.order(ByteOrder.LITTLE_ENDIAN);
+            }
+            // Incremented to 0 before reading the first record
+            offset = -RECORD_SIZE;
+        }
+    }
+
+    public short code() {
+        return buffer.getShort(offset + CODE_OFFSET);
+    }
+
+    public int opaque() {
+        return buffer.getInt(offset + OPAQUE_OFFSET);
+    }
+
+    /**
+     * Time the status was recorded, in nanoseconds since the epoch.
+     */
+    public long timestampNanos() {
+        return buffer.getLong(offset + TIMESTAMP_OFFSET);
+    }
+
+    @Override
+    public void close() {
+        // Mapped buffers are unmapped when collected
+        buffer = null;
+        nextSegment = segments.size();
+    }
+
+    /**
+     * Read the codes of all records of a recording directory or segment file.
+     */
+    public static short[] readCodes(Path path) throws IOException {
+        short[] codes = new short[1024];
+        int count = 0;
+        try (StatusTraceReader reader = new StatusTraceReader(path)) {
+            while (reader.next()) {
+                if (count == codes.length) {
+                    codes = Arrays.copyOf(codes, count * 2);
+                }
+                codes[count++] = reader.code();
+            }
+        }
+        return Arrays.copyOf(codes, count);
+    }
+
+    /**
+     * The segment files of a recording directory, oldest first.
+     */
+    static List<Path> segments(Path directory) throws IOException {
+        List<Path> result = new ArrayList<>();
+        String glob = StatusRecorder.SEGMENT_PREFIX + "*" + StatusRecorder.SEGMENT_SUFFIX;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, glob)) {
+            for (Path segment: stream) {
+                result.add(segment);
+            }
+        }
+        // Numbers are zero-padded to 6 digits but can have more: sort by number rather than by name
+        result.sort(Comparator.comparingLong(StatusTraceReader::segmentNumber));
+        return result;
+    }
+
+    private static long segmentNumber(Path segment) {
+        String name = segment.getFileName().toString();
+        return Long.parseLong(name.substring(StatusRecorder.SEGMENT_PREFIX.length(),
+                name.length() - StatusRecorder.SEGMENT_SUFFIX.length()));
+    }
+}
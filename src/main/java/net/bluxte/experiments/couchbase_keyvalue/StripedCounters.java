@@ -0,0 +1,67 @@
+package net.bluxte.experiments.couchbase_keyvalue;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A fixed-width row of counters, striped across threads to avoid contention. Each stripe is padded
+ * to sit on its own cache lines, so that threads updating different stripes don't false-share.
+ *
+ * Counters are updated with atomic adds and read with atomic get-and-set: a snapshot never blocks
+ * writers, and an increment that races with a snapshot is counted either in it or in the next one.
+ */
+class StripedCounters {
+
+    // 64-byte cache lines, and some more to defeat adjacent line prefetch
+    private static final int PADDING = 16;
+
+    private final int width;
+    private final int stride;
+    private final int stripeMask;
+    private final AtomicLongArray cells;
+
+    StripedCounters(int width) {
+        this(width, Runtime.getRuntime().availableProcessors());
+    }
+
+    StripedCounters(int width, int stripes) {
+        int stripeCount = Integer.highestOneBit(Math.max(1, stripes - 1)) << 1;
+        this.width = width;
+        this.stride = width + PADDING;
+        this.stripeMask = stripeCount - 1;
+        // Leading padding so that the first stripe doesn't share a line with the array header
+        this.cells = new AtomicLongArray(PADDING + stripeCount * stride);
+    }
+
+    int width() {
+        return width;
+    }
+
+    void increment(int index) {
+        cells.getAndIncrement(offset() + index);
+    }
+
+    void add(int index, long delta) {
+        cells.getAndAdd(offset() + index, delta);
+    }
+
+    /**
+     * Sum all stripes, resetting them to zero.
+     */
+    long[] snapshotAndReset() {
+        long[] result = new long[width];
+        for (int base = PADDING; base < cells.length(); base += stride) {
+            for (int i = 0; i < width; i++) {
+                if (cells.get(base + i) != 0) {
+                    result[i] += cells.getAndSet(base + i, 0);
+                }
+            }
+        }
+        return result;
+    }
+
+    private int offset() {
+        // Fibonacci hashing of the thread id, so that consecutive ids spread over stripes
+        int stripe = ((int) Thread.currentThread().getId() * 0x9E3779B9) >>> 16 & stripeMask;
+        return PADDING + stripe * stride;
+    }
+}
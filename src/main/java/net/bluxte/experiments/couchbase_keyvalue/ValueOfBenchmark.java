@@ -30,6 +30,10 @@ import org.openjdk.jmh.annotations.Param;
 import org.openjdk.jmh.annotations.Scope;
 import org.openjdk.jmh.annotations.State;
 
+/**
+ * Resolvers with a single code per trial. The branch predictor learns it perfectly: see
+ * {@link WorkloadBenchmark} for the same resolvers under realistic traffic mixes and recorded traffic.
+ */
 @State(Scope.Benchmark)
 public class ValueOfBenchmark {
 
@@ -67,6 +71,11 @@ public class ValueOfBenchmark {
         return KeyValueStatus.valueOfLookupArray(code);
     }
 
+    @Benchmark
+    public KeyValueStatus lookupPaged() {
+        return KeyValueStatus.valueOfPagedLookup(code);
+    }
+
     @Benchmark
     public KeyValueStatus lookupArrayUnchecked() {
         return KeyValueStatus.valueOfLookupArrayUnchecked(code);
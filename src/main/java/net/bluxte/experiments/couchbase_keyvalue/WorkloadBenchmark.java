@@ -0,0 +1,64 @@
+package net.bluxte.experiments.couchbase_keyvalue;
+
+import org.openjdk.jmh.annotations.Benchmark;
+
+/**
+ * All resolvers fed with pre-generated traffic mixes (see {@link CodeSequence}), to expose the cost
+ * of branch mispredictions and cache misses that single-code benchmarks hide.
+ *
+ * {@code sequenceOnly} is the cost of reading the next code, to be subtracted from other results.
+ * Run with {@code -prof perf} on Linux to see branch and cache miss counts. Replay recorded traffic with
+ * {@code -p workload=recording -p traceFile=<directory>}.
+ */
+public class WorkloadBenchmark {
+
+    @Benchmark
+    public short sequenceOnly(CodeSequence codes) {
+        return codes.next();
+    }
+
+    @Benchmark
+    public KeyValueStatus loopNoFastPath(CodeSequence codes) {
+        return KeyValueStatus.valueOfLoop(codes.next());
+    }
+
+    @Benchmark
+    public KeyValueStatus loopFastPath(CodeSequence codes) {
+        return KeyValueStatus.valueOf(codes.next());
+    }
+
+    @Benchmark
+    public KeyValueStatus loopOnConstantArray(CodeSequence codes) {
+        return KeyValueStatus.valueOfLoopOnConstantArray(codes.next());
+    }
+
+    @Benchmark
+    public KeyValueStatus lookupMap(CodeSequence codes) {
+        return KeyValueStatus.valueOfLookupMap(codes.next());
+    }
+
+    @Benchmark
+    public KeyValueStatus lookupShortMap(CodeSequence codes) {
+        return KeyValueStatus.valueOfShortMap(codes.next());
+    }
+
+    @Benchmark
+    public KeyValueStatus lookupArray(CodeSequence codes) {
+        return KeyValueStatus.valueOfLookupArray(codes.next());
+    }
+
+    @Benchmark
+    public KeyValueStatus lookupPaged(CodeSequence codes) {
+        return KeyValueStatus.valueOfPagedLookup(codes.next());
+    }
+
+    @Benchmark
+    public KeyValueStatus lookupArrayUnchecked(CodeSequence codes) {
+        return KeyValueStatus.valueOfLookupArrayUnchecked(codes.next());
+    }
+
+    @Benchmark
+    public KeyValueStatus lookupBigSwitch(CodeSequence codes) {
+        return KeyValueStatus.valueOfBigSwitch(codes.next());
+    }
+}
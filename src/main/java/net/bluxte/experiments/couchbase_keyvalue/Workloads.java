@@ -0,0 +1,171 @@
+package net.bluxte.experiments.couchbase_keyvalue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ShortBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Random;
+
+/**
+ * Pre-generated sequences of status codes, to feed resolvers with realistic traffic mixes rather than a
+ * single code that the branch predictor learns perfectly.
+ *
+ * Trace files are a plain sequence of big-endian 16-bit status codes. Recordings of a {@link StatusRecorder}
+ * can also be replayed.
+ */
+public class Workloads {
+
+    /**
+     * Known codes, by decreasing expected frequency: the enum order, which starts with SUCCESS and the
+     * most common errors. UNKNOWN isn't included, as it has no valid code.
+     */
+    private static final short[] KNOWN_CODES;
+
+    static {
+        KeyValueStatus[] values = KeyValueStatus.values();
+        KNOWN_CODES = new short[values.length - 1];
+        int i = 0;
+        for (KeyValueStatus value: values) {
+            if (value != KeyValueStatus.UNKNOWN) {
+                KNOWN_CODES[i++] = value.code();
+            }
+        }
+    }
+
+    /**
+     * Create a workload by name, as used in benchmark parameters.
+     *
+     * @param name one of {@code uniform}, {@code zipf}, {@code bursty}, {@code subdoc}, {@code trace} or
+     *        {@code recording}.
+     * @param length number of codes to generate. Ignored for traces.
+     * @param skew the Zipf exponent. Ignored for other workloads.
+     * @param traceFile the trace file, or the recording directory or segment, to replay. Ignored for other
+     *        workloads.
+     */
+    public static short[] create(String name, int length, double skew, String traceFile, long seed) throws IOException {
+        switch (name) {
+            case "uniform": return uniform(length, seed);
+            case "zipf": return zipf(length, skew, seed);
+            case "bursty": return successWithTempFailBursts(length, seed);
+            case "subdoc": return subdocWithFailures(length, seed);
+            case "trace": return readTrace(Paths.get(traceFile));
+            case "recording": return StatusTraceReader.readCodes(Paths.get(traceFile));
+            default: throw new IllegalArgumentException("Unknown workload: " + name);
+        }
+    }
+
+    /**
+     * All known codes with the same probability.
+     */
+    public static short[] uniform(int length, long seed) {
+        Random rnd = new Random(seed);
+        short[] result = new short[length];
+        for (int i = 0; i < length; i++) {
+            result[i] = KNOWN_CODES[rnd.nextInt(KNOWN_CODES.length)];
+        }
+        return result;
+    }
+
+    /**
+     * Known codes following a Zipf distribution: the probability of the code of rank {@code k} is
+     * proportional to {@code 1 / k^skew}. A skew of 0 is uniform, higher skews concentrate traffic on
+     * SUCCESS and the first errors.
+     */
+    public static short[] zipf(int length, double skew, long seed) {
+        double[] cumulative = new double[KNOWN_CODES.length];
+        double sum = 0;
+        for (int k = 0; k < cumulative.length; k++) {
+            sum += 1.0 / Math.pow(k + 1, skew);
+            cumulative[k] = sum;
+        }
+
+        Random rnd = new Random(seed);
+        short[] result = new short[length];
+        for (int i = 0; i < length; i++) {
+            double x = rnd.nextDouble() * sum;
+            int k = 0;
+            while (k < cumulative.length - 1 && cumulative[k] < x) {
+                k++;
+            }
+            result[i] = KNOWN_CODES[k];
+        }
+        return result;
+    }
+
+    /**
+     * About 99.2% SUCCESS, with failures coming in bursts of ERR_TEMP_FAIL of 1 to 63 codes, as when a node
+     * is briefly overloaded. A burst starts every 4096 codes on average: a sequence of 65536 codes has about
+     * 16 bursts, but sequences of a few hundred codes usually have none.
+     */
+    public static short[] successWithTempFailBursts(int length, long seed) {
+        final int maxBurst = 64;
+        // Average burst length is maxBurst/2, so that failures are 32 / (4096 + 32) = 0.8% of all codes
+        final double burstProbability = 1.0 / 4096;
+
+        Random rnd = new Random(seed);
+        short[] result = new short[length];
+        int i = 0;
+        while (i < length) {
+            if (rnd.nextDouble() < burstProbability) {
+                int end = Math.min(length, i + 1 + rnd.nextInt(maxBurst - 1));
+                while (i < end) {
+                    result[i++] = KeyValueStatus.ERR_TEMP_FAIL.code();
+                }
+            } else {
+                result[i++] = KeyValueStatus.SUCCESS.code();
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Sub-document operations: 90% SUCCESS, failures being mostly missing or already existing paths, with
+     * some multi-path failures, missing documents and temporary failures.
+     */
+    public static short[] subdocWithFailures(int length, long seed) {
+        // Failures, repeated according to their weight
+        final KeyValueStatus[] failures = {
+            KeyValueStatus.ERR_SUBDOC_PATH_NOT_FOUND,
+            KeyValueStatus.ERR_SUBDOC_PATH_NOT_FOUND,
+            KeyValueStatus.ERR_SUBDOC_PATH_NOT_FOUND,
+            KeyValueStatus.ERR_SUBDOC_PATH_NOT_FOUND,
+            KeyValueStatus.ERR_SUBDOC_PATH_EXISTS,
+            KeyValueStatus.ERR_SUBDOC_PATH_EXISTS,
+            KeyValueStatus.ERR_SUBDOC_MULTI_PATH_FAILURE,
+            KeyValueStatus.ERR_SUBDOC_PATH_MISMATCH,
+            KeyValueStatus.ERR_NOT_FOUND,
+            KeyValueStatus.ERR_TEMP_FAIL
+        };
+
+        Random rnd = new Random(seed);
+        short[] result = new short[length];
+        for (int i = 0; i < length; i++) {
+            KeyValueStatus status = rnd.nextDouble() < 0.9
+                    ? KeyValueStatus.SUCCESS
+                    : failures[rnd.nextInt(failures.length)];
+            result[i] = status.code();
+        }
+        return result;
+    }
+
+    /**
+     * Read a recorded trace file.
+     */
+    public static short[] readTrace(Path file) throws IOException {
+        ShortBuffer codes = ByteBuffer.wrap(Files.readAllBytes(file)).asShortBuffer();
+        short[] result = new short[codes.remaining()];
+        codes.get(result);
+        return result;
+    }
+
+    /**
+     * Write a trace file that can be replayed with {@link #readTrace(Path)}.
+     */
+    public static void writeTrace(Path file, short[] codes) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(codes.length * 2);
+        buffer.asShortBuffer().put(codes);
+        Files.write(file, buffer.array());
+    }
+}
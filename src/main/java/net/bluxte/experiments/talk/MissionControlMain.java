@@ -1,10 +1,61 @@
 package net.bluxte.experiments.talk;
 
 import net.bluxte.experiments.couchbase_keyvalue.KeyValueStatus;
+import net.bluxte.experiments.couchbase_keyvalue.RecordingStatusResolver;
+import net.bluxte.experiments.couchbase_keyvalue.StatusRecorder;
+import net.bluxte.experiments.couchbase_keyvalue.StatusResolver;
+import net.bluxte.experiments.couchbase_keyvalue.StatusResolvers;
+import net.bluxte.experiments.couchbase_keyvalue.Workloads;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.HistogramLogWriter;
+import org.HdrHistogram.Recorder;
 
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.PrintStream;
+import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
 
+/**
+ * Soak and profiling harness: resolves status codes at a target rate from several threads, and reports
+ * latency percentiles periodically. This gives a reproducible workload to look at tail latency and GC
+ * behavior under Flight Recorder or a profiler.
+ *
+ * Configured with system properties:
+ * <ul>
+ *     <li>{@code soak.rate}: target operations per second over all threads, 0 for no limit (default 1000000)</li>
+ *     <li>{@code soak.threads}: number of threads (default 1)</li>
+ *     <li>{@code soak.virtualThreads}: use virtual threads if the JVM has them (default false)</li>
+ *     <li>{@code soak.workload}, {@code soak.skew}, {@code soak.trace}: code distribution, see {@link Workloads#create}
+ *     (default zipf, skew 1.0). Replay a recording with {@code -Dsoak.workload=recording -Dsoak.trace=<directory>}</li>
+ *     <li>{@code soak.seed}: seed of the generated workloads (default 0)</li>
+ *     <li>{@code soak.duration}: run duration in seconds (default 2 hours)</li>
+ *     <li>{@code soak.reportInterval}: seconds between reports (default 10)</li>
+ *     <li>{@code soak.histogramLog}: file to write interval histograms to, for HistogramLogAnalyzer or
+ *     HdrHistogram's log processor (default none)</li>
+ *     <li>{@code soak.jfrEvents}: resolve through {@link RecordingStatusResolver}, to get status events in
+ *     Flight Recorder (default false)</li>
+ *     <li>{@code soak.record}: directory to record resolved codes to with a {@link StatusRecorder}, in 64MB
+ *     segments of which the last 16 are kept (default none)</li>
+ *     <li>{@code kv.status.resolver}: the resolution strategy, see {@link StatusResolvers}</li>
+ * </ul>
+ *
+ * Operations are scheduled at fixed intervals. Two latencies are recorded, in microseconds in reports:
+ * <ul>
+ *     <li>response time, from the time the operation was scheduled: if a thread stalls, the operations
+ *     that should have run during the stall are late, and are measured as such</li>
+ *     <li>service time, the duration of the call, recorded with HdrHistogram's correction for
+ *     coordinated omission using the scheduling interval</li>
+ * </ul>
+ * Timing and recording cost a few tens of nanoseconds, more than the fastest resolvers: compare resolvers
+ * on their tails and GC behavior rather than on median latency.
+ *
+ * Run with e.g. {@code -XX:StartFlightRecording=filename=soak.jfr -Dkv.status.resolver=LOOP}, and
+ * {@code -Dsoak.jfrEvents=true} to also record status events (enabled by default in the recording settings).
+ */
 public class MissionControlMain {
 
     public String foo(int a, char[] b, List<Integer> c, boolean d) {
@@ -12,45 +63,260 @@ public class MissionControlMain {
     }
 
     // I often forget the running process after demos...
-    private static long MAX_NANOS = 120 * 60 * 1_000_000_000L;
+    private static final long DEFAULT_DURATION_SECONDS = 120 * 60;
 
-    private static Random rnd = new Random();
+    // Below this, wait for the next operation by spinning rather than parking
+    private static final long PARK_THRESHOLD_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
 
-    public static KeyValueStatus resolved;
+    private static final double NANOS_PER_MICRO = 1000.0;
+
+    private static volatile boolean running = true;
 
-    // Run with -XX:+UnlockCommercialFeatures -XX:+FlightRecorder
     public static void main(String[] args) throws Exception {
+        long rate = Long.getLong("soak.rate", 1_000_000);
+        int threads = Integer.getInteger("soak.threads", 1);
+        boolean virtualThreads = Boolean.getBoolean("soak.virtualThreads");
+        String workload = System.getProperty("soak.workload", "zipf");
+        double skew = Double.parseDouble(System.getProperty("soak.skew", "1.0"));
+        String trace = System.getProperty("soak.trace", "");
+        long seed = Long.getLong("soak.seed", 0);
+        long durationNanos = TimeUnit.SECONDS.toNanos(Long.getLong("soak.duration", DEFAULT_DURATION_SECONDS));
+        long reportNanos = TimeUnit.SECONDS.toNanos(Long.getLong("soak.reportInterval", 10));
+        String histogramLog = System.getProperty("soak.histogramLog");
+        boolean jfrEvents = Boolean.getBoolean("soak.jfrEvents");
+        String record = System.getProperty("soak.record", "");
+
+        long intervalNanos = rate <= 0 ? 0 : TimeUnit.SECONDS.toNanos(threads) / rate;
+
+        System.out.printf("Resolver %s, %s workload, %d %s thread(s), target rate %s%n",
+                StatusResolvers.selected(), workload, threads, virtualThreads ? "virtual" : "platform",
+                rate <= 0 ? "unlimited" : rate + " ops/s");
+
+        StatusRecorder recorder = record.isEmpty() ? null : new StatusRecorder(Paths.get(record), 64 << 20, 16);
 
         long start = System.nanoTime();
+        List<Worker> workers = new ArrayList<>();
+        List<Thread> workerThreads = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            short[] codes = Workloads.create(workload, 1 << 16, skew, trace, seed + i);
+            StatusResolver events = jfrEvents ? new RecordingStatusResolver(StatusResolvers.selected()) : null;
+            Worker worker = new Worker(i, codes, start, intervalNanos, events, recorder);
+            workers.add(worker);
+            workerThreads.add(newThread(worker, "soak-" + i, virtualThreads));
+        }
+        for (Thread thread: workerThreads) {
+            thread.start();
+        }
 
-        while(System.nanoTime() - start < MAX_NANOS) {
-            for (int i = 0; i < 1_000_000; i++) {
-                resolved = resolve((short)rnd.nextInt(0x10));
+        Histogram totalResponse = new Histogram(3);
+        Histogram totalService = new Histogram(3);
+        Histogram intervalResponse = new Histogram(3);
+        Histogram intervalService = new Histogram(3);
+
+        HistogramLogWriter logWriter = histogramLogWriter(histogramLog, start);
+
+        System.out.printf("%n%8s %12s | %-40s | %-40s%n", "", "", "response time (us)", "service time (us)");
+        System.out.printf("%8s %12s | %9s %9s %9s %9s | %9s %9s %9s %9s%n",
+                "time", "ops/s", "p50", "p99", "p99.99", "max", "p50", "p99", "p99.99", "max");
+
+        long end = start + durationNanos;
+        long nextReport = start + reportNanos;
+        long lastReport = start;
+        boolean last = false;
+        while (!last) {
+            long now = System.nanoTime();
+            long wakeup = Math.min(nextReport, end);
+            if (now < wakeup) {
+                TimeUnit.NANOSECONDS.sleep(wakeup - now);
+                continue;
+            }
+            if (now >= end) {
+                last = true;
+                running = false;
+                for (Thread thread: workerThreads) {
+                    thread.join();
+                }
+                now = System.nanoTime();
             }
-            Thread.sleep(100);
-        }
-    }
 
-    private static KeyValueStatus resolve(short value) {
+            intervalResponse.reset();
+            intervalService.reset();
+            for (Worker worker: workers) {
+                intervalResponse.add(worker.response.getIntervalHistogram());
+                intervalService.add(worker.service.getIntervalHistogram());
+            }
+            totalResponse.add(intervalResponse);
+            totalService.add(intervalService);
 
-        // Iteration on enum.values()
-        return KeyValueStatus.valueOfLoop(value);
+            double seconds = (now - lastReport) / 1e9;
+            // Corrected service time adds fictitious samples, the response time histogram has the real count
+            System.out.printf("%7.0fs %12.0f | %s | %s%n",
+                    (now - start) / 1e9, intervalResponse.getTotalCount() / seconds,
+                    percentiles(intervalResponse), percentiles(intervalService));
 
-        // Iteration on enum.values() with fast path
-        //return KeyValueStatus.valueOf(value);
+            if (logWriter != null) {
+                logInterval(logWriter, intervalResponse, "response", lastReport, now, start);
+                logInterval(logWriter, intervalService, "service", lastReport, now, start);
+            }
 
-        // No fast path, use a static array to avoid allocation when calling values()
-        //return KeyValueStatus.valueOfLoopOnConstantArray(value);
+            lastReport = now;
+            nextReport += reportNanos;
+        }
 
-        // Lookup map: code (Short) -> KeyValueStatus
-        //return KeyValueStatus.valueOfLookupMap(value);
+        if (logWriter != null) {
+            logWriter.close();
+        }
+        if (recorder != null) {
+            recorder.close();
+            System.out.printf("%nRecorded %d codes to %s, %d dropped, %d after close%n",
+                    recorder.records() - recorder.dropped(), record, recorder.dropped(), recorder.rejected());
+        }
 
-        // Lookup array: code -> KeyValueStatus
-        //return KeyValueStatus.valueOfLookupArray(value);
+        System.out.printf("%nResponse time (us), %d operations%n", totalResponse.getTotalCount());
+        totalResponse.outputPercentileDistribution(System.out, 2, NANOS_PER_MICRO);
+        System.out.printf("%nService time (us), corrected for coordinated omission%n");
+        totalService.outputPercentileDistribution(System.out, 2, NANOS_PER_MICRO);
 
+        // Use the results, so that resolution isn't dead code
+        long sink = 0;
+        for (Worker worker: workers) {
+            sink += worker.sink;
+        }
+        if (sink == 42) {
+            System.out.println(sink);
+        }
     }
 
     public String foo(long a, char[] b, List<Integer> c, boolean d) {
         return "";
     }
+
+    //---------------------------------------------------------------------------------------------
+    // Load generation
+
+    private static class Worker implements Runnable {
+        final short[] codes;
+        final long startNanos;
+        final long intervalNanos;
+        // If not null, resolver emitting JFR events
+        final StatusResolver events;
+        // If not null, records resolved codes
+        final StatusRecorder recorder;
+        // Opaques are the operation number, with the worker index in the high byte
+        final int opaqueBase;
+
+        final Recorder response = new Recorder(3);
+        final Recorder service = new Recorder(3);
+
+        volatile long sink;
+
+        Worker(int index, short[] codes, long startNanos, long intervalNanos, StatusResolver events,
+               StatusRecorder recorder) {
+            this.codes = codes;
+            this.startNanos = startNanos;
+            this.intervalNanos = intervalNanos;
+            this.events = events;
+            this.recorder = recorder;
+            this.opaqueBase = index << 24;
+        }
+
+        @Override
+        public void run() {
+            long intended = startNanos;
+            long sum = 0;
+            int i = 0;
+            int operation = 0;
+            while (running) {
+                long now = System.nanoTime();
+                if (intervalNanos == 0) {
+                    intended = now;
+                } else {
+                    while (intended - now > 0) {
+                        if (intended - now > PARK_THRESHOLD_NANOS) {
+                            LockSupport.parkNanos(intended - now - PARK_THRESHOLD_NANOS / 2);
+                        }
+                        now = System.nanoTime();
+                    }
+                }
+
+                short code = codes[i];
+                i = i + 1 == codes.length ? 0 : i + 1;
+
+                long before = System.nanoTime();
+                KeyValueStatus status = events == null ? StatusResolvers.resolveSelected(code) : events.resolve(code);
+                long after = System.nanoTime();
+
+                sum += status.ordinal();
+                response.recordValue(after - intended);
+                if (intervalNanos == 0) {
+                    service.recordValue(after - before);
+                } else {
+                    service.recordValueWithExpectedInterval(after - before, intervalNanos);
+                }
+                // Outside of the measured call, like the histograms
+                if (recorder != null) {
+                    recorder.record(code, opaqueBase | (operation++ & 0xffffff));
+                }
+                intended += intervalNanos;
+            }
+            sink = sum;
+        }
+    }
+
+    private static boolean virtualThreadsWarned;
+
+    /**
+     * A virtual thread if requested and available (JDK 21+, found by reflection as the project targets
+     * Java 8), a platform thread otherwise.
+     */
+    static Thread newThread(Runnable task, String name, boolean virtual) {
+        if (virtual) {
+            try {
+                Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+                Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+                builder = builderClass.getMethod("name", String.class).invoke(builder, name);
+                return (Thread) builderClass.getMethod("unstarted", Runnable.class).invoke(builder, task);
+            } catch (ReflectiveOperationException e) {
+                if (!virtualThreadsWarned) {
+                    System.err.println("Virtual threads not available, using platform threads (" + e + ")");
+                    virtualThreadsWarned = true;
+                }
+            }
+        }
+        return new Thread(task, name);
+    }
+
+    //---------------------------------------------------------------------------------------------
+    // Reporting
+
+    private static String percentiles(Histogram histogram) {
+        return String.format("%9.1f %9.1f %9.1f %9.1f",
+                histogram.getValueAtPercentile(50) / NANOS_PER_MICRO,
+                histogram.getValueAtPercentile(99) / NANOS_PER_MICRO,
+                histogram.getValueAtPercentile(99.99) / NANOS_PER_MICRO,
+                histogram.getMaxValue() / NANOS_PER_MICRO);
+    }
+
+    private static HistogramLogWriter histogramLogWriter(String file, long startNanos) throws FileNotFoundException {
+        if (file == null || file.isEmpty()) {
+            return null;
+        }
+        HistogramLogWriter writer = new HistogramLogWriter(new PrintStream(new File(file)));
+        long startMillis = System.currentTimeMillis() - TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+        writer.outputLogFormatVersion();
+        writer.outputStartTime(startMillis);
+        writer.setBaseTime(startMillis);
+        writer.outputLegend();
+        return writer;
+    }
+
+    private static void logInterval(HistogramLogWriter writer, Histogram histogram, String tag,
+                                    long fromNanos, long toNanos, long startNanos) {
+        long baseMillis = System.currentTimeMillis() - TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+        histogram.setTag(tag);
+        histogram.setStartTimeStamp(baseMillis + TimeUnit.NANOSECONDS.toMillis(fromNanos - startNanos));
+        histogram.setEndTimeStamp(baseMillis + TimeUnit.NANOSECONDS.toMillis(toNanos - startNanos));
+        writer.outputIntervalHistogram(histogram);
+        histogram.setTag(null);
+    }
 }
@@ -0,0 +1,358 @@
+/*
+ * Copyright (c) 2016 Couchbase, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.bluxte.experiments.couchbase_keyvalue;
+
+// Original at https://github.com/couchbase/couchbase-jvm-core/blob/master/src/main/java/com/couchbase/client/core/endpoint/kv/KeyValueStatus.java
+// Additional implementations of valueOf at the bottom of this class
+//
+// This is a template: the //@@...@@ markers are replaced at build time by StatusTableGenerator, from
+// the status definitions in src/main/protocol/KeyValueStatus.def
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Objects;
+
+/**
+ * Enum describing all known response status codes that could be seen on the KeyValue protocol.
+ *
+ * Based on include/memcached/protocol_binary.h from memcached repository.
+ *
+ * @author Sergey Avseyev
+ * @author Michael Nitschinger
+ * @since 1.2.0
+ */
+public enum KeyValueStatus {
+
+    //@@CONSTANTS@@
+
+
+    private final short code;
+    private final String description;
+    private final int flags;
+
+    KeyValueStatus(short code, String description) {
+        this(code, description, 0);
+    }
+
+    KeyValueStatus(short code, String description, int flags) {
+        this.code = code;
+        this.description = description;
+        this.flags = flags;
+    }
+
+    //---------------------------------------------------------------------------------------------
+    // The tables used by the various strategies are in initialization-on-demand holders, and are
+    // only built when their strategy is first used: class initialization only creates the enum
+    // constants. They can all be built upfront with -Dkv.status.eagerTables=true or by calling
+    // initializeTables(), to move this cost out of the first requests.
+
+    public static final String EAGER_TABLES_PROPERTY = "kv.status.eagerTables";
+
+    static {
+        if (Boolean.getBoolean(EAGER_TABLES_PROPERTY)) {
+            initializeTables();
+        }
+    }
+
+    /**
+     * Build the tables of all strategies now rather than on first use.
+     */
+    public static void initializeTables() {
+        // Reading a static field initializes its holder class
+        Objects.requireNonNull(ValuesHolder.VALUES);
+        Objects.requireNonNull(MapHolder.code2statusMap);
+        Objects.requireNonNull(ShortMapHolder.code2statusShortMap);
+        Objects.requireNonNull(LookupArrayHolder.code2status);
+        Objects.requireNonNull(PagesHolder.code2statusPages);
+        Objects.requireNonNull(FlagsHolder.code2flags);
+        Objects.requireNonNull(OrdinalsHolder.code2ordinal);
+        Objects.requireNonNull(Utf8Holder.names);
+    }
+
+    /**
+     * Determine the right {@link KeyValueStatus} for the given status code.
+     *
+     * Certain status codes are checked upfront since they are most commonly converted (this avoids iterating
+     * through the full enum values list, especially in the non-corner or failure case variants).
+     *
+     * @param code the status code to check.
+     * @return the matched code, or unknown if none is found.
+     */
+    public static KeyValueStatus valueOf(final short code) {
+        if (code == SUCCESS.code) {
+            return SUCCESS;
+        } else if (code == ERR_NOT_FOUND.code) {
+            return ERR_NOT_FOUND;
+        } else if (code == ERR_EXISTS.code) {
+            return ERR_EXISTS;
+        } else if (code == ERR_NOT_MY_VBUCKET.code) {
+            return ERR_NOT_MY_VBUCKET;
+        }
+
+        for (KeyValueStatus keyValueStatus : values()) {
+            if (keyValueStatus.code() == code) {
+                return keyValueStatus;
+            }
+        }
+        return UNKNOWN;
+    }
+
+    public short code() {
+        return code;
+    }
+
+    public String description() {
+        return description;
+    }
+
+    /**
+     * The {@link StatusCategory} flags of this status.
+     */
+    public int flags() {
+        return flags;
+    }
+
+    /**
+     * Is this status in any of the given {@link StatusCategory} flags?
+     */
+    public boolean is(int categories) {
+        return (flags & categories) != 0;
+    }
+
+    //---------------------------------------------------------------------------------------------
+    // Name and description encoded in UTF-8, so that logging a status doesn't create and encode
+    // strings. See StatusFormatter.
+
+    private static final class Utf8Holder {
+        static final byte[][] names;
+        static final byte[][] descriptions;
+
+        static {
+            KeyValueStatus[] values = values();
+            names = new byte[values.length][];
+            descriptions = new byte[values.length][];
+            for (KeyValueStatus value: values) {
+                names[value.ordinal()] = value.name().getBytes(StandardCharsets.UTF_8);
+                descriptions[value.ordinal()] = value.description.getBytes(StandardCharsets.UTF_8);
+            }
+        }
+    }
+
+    /**
+     * The name of this status encoded in UTF-8. The array is shared: it must not be modified.
+     */
+    public byte[] utf8Name() {
+        return Utf8Holder.names[ordinal()];
+    }
+
+    /**
+     * The description of this status encoded in UTF-8. The array is shared: it must not be modified.
+     */
+    public byte[] utf8Description() {
+        return Utf8Holder.descriptions[ordinal()];
+    }
+
+    //---------------------------------------------------------------------------------------------
+    // Classification of raw codes, without resolving the enum: a flat table of category flags
+    // covering the full 16-bit code space. The mask removes the bounds check, and the table is
+    // 64kB of which only the lines of codes actually seen are brought into cache.
+
+    private static final class FlagsHolder {
+        static final byte[] code2flags = new byte[0x10000];
+
+        static {
+            //@@CODE2FLAGS@@
+        }
+    }
+
+    /**
+     * The {@link StatusCategory} flags of a raw status code, or 0 for unknown codes.
+     */
+    public static int flagsOf(final short code) {
+        return FlagsHolder.code2flags[code & 0xffff];
+    }
+
+    // Same layout for ordinals, for bulk operations that count or store statuses by ordinal without
+    // resolving the enum for each code. See StatusHistogram.
+
+    private static final class OrdinalsHolder {
+        static final byte[] code2ordinal = new byte[0x10000];
+
+        static {
+            Arrays.fill(code2ordinal, (byte) UNKNOWN.ordinal());
+            for (KeyValueStatus value: values()) {
+                if (value != UNKNOWN) {
+                    code2ordinal[value.code() & 0xffff] = (byte) value.ordinal();
+                }
+            }
+        }
+    }
+
+    /**
+     * The ordinal of the status of a raw code, i.e. {@code valueOfLookupArray(code).ordinal()}.
+     */
+    public static int ordinalOf(final short code) {
+        return OrdinalsHolder.code2ordinal[code & 0xffff];
+    }
+
+    //---------------------------------------------------------------------------------------------
+    // Original implementation, with no fast path
+
+    public static KeyValueStatus valueOfLoop(final short code) {
+        for (KeyValueStatus value: values()) {
+            if (value.code() == code) return value;
+        }
+        return UNKNOWN;
+    }
+
+    //---------------------------------------------------------------------------------------------
+    // No fast path, use a static array to avoid allocation when calling values()
+
+    private static final class ValuesHolder {
+        static final KeyValueStatus[] VALUES = values();
+    }
+
+    public static KeyValueStatus valueOfLoopOnConstantArray(final short code) {
+        for (KeyValueStatus value: ValuesHolder.VALUES) {
+            if (value.code() == code) return value;
+        }
+        return UNKNOWN;
+    }
+
+    //---------------------------------------------------------------------------------------------
+    // Using a map
+
+    private static final class MapHolder {
+        static final HashMap<Short, KeyValueStatus> code2statusMap = new HashMap<>();
+
+        static {
+            for (KeyValueStatus value: values()) {
+                code2statusMap.put(value.code(), value);
+            }
+        }
+    }
+
+    public static KeyValueStatus valueOfLookupMap(final short code) {
+        return MapHolder.code2statusMap.getOrDefault(code, UNKNOWN);
+    }
+
+    //---------------------------------------------------------------------------------------------
+    // Using a primitive map: no boxing of the code, in a frozen table that is at most half full. The
+    // current codes have no collision-free layout within ShortObjectMap's bound on the table size:
+    // known codes take 1.4 probes on average and at most 5, unknown codes probe until an empty slot.
+
+    private static final class ShortMapHolder {
+        static final ShortObjectMap<KeyValueStatus> code2statusShortMap;
+
+        static {
+            ShortObjectMap<KeyValueStatus> map = new ShortObjectMap<>(values().length);
+            for (KeyValueStatus value: values()) {
+                map.put(value.code(), value);
+            }
+            code2statusShortMap = map.freeze();
+        }
+    }
+
+    public static KeyValueStatus valueOfShortMap(final short code) {
+        return ShortMapHolder.code2statusShortMap.getOrDefault(code, UNKNOWN);
+    }
+
+    //---------------------------------------------------------------------------------------------
+    // Using a lookup table
+
+    // Lookup table: code -> KeyValueStatus, generated as a literal so that there's no loop to run at
+    // class initialization
+    private static final class LookupArrayHolder {
+        static final KeyValueStatus[] code2status = {
+            //@@CODE2STATUS@@
+        };
+    }
+
+    public static KeyValueStatus valueOfLookupArray(final short code) {
+        final KeyValueStatus[] code2status = LookupArrayHolder.code2status;
+        if (code >= 0 && code < code2status.length) {
+            return code2status[code];
+        } else {
+            return UNKNOWN;
+        }
+    }
+
+    //---------------------------------------------------------------------------------------------
+    // Two-level lookup table covering the full 16-bit code space: the high byte of the code selects
+    // a page, the low byte an entry in that page. Pages with no known code share a single page filled
+    // with UNKNOWN, so the footprint is one 256-entry page per populated range.
+    //
+    // Both indexes are masked to 0..0xff, so there's no explicit bounds check.
+
+    private static final class PagesHolder {
+        static final KeyValueStatus[][] code2statusPages = new KeyValueStatus[0x100][];
+
+        static {
+            KeyValueStatus[] unknownPage = new KeyValueStatus[0x100];
+            Arrays.fill(unknownPage, UNKNOWN);
+            Arrays.fill(code2statusPages, unknownPage);
+            for (KeyValueStatus keyValueStatus : values()) {
+                if (keyValueStatus != UNKNOWN) {
+                    int code = keyValueStatus.code() & 0xffff;
+                    KeyValueStatus[] page = code2statusPages[code >>> 8];
+                    if (page == unknownPage) {
+                        page = unknownPage.clone();
+                        code2statusPages[code >>> 8] = page;
+                    }
+                    page[code & 0xff] = keyValueStatus;
+                }
+            }
+        }
+    }
+
+    public static KeyValueStatus valueOfPagedLookup(final short code) {
+        return PagesHolder.code2statusPages[(code >>> 8) & 0xff][code & 0xff];
+    }
+
+    //---------------------------------------------------------------------------------------------
+    // Variant with unchecked array bounds, to see the effect of replacing bounds checking with a try/catch
+    //
+    // Benchmark shows no difference. We can assume the HotSpot does range check elimination
+    // in valueOfLookupArray while it keeps it here. JitVerifier checks that neither deoptimizes
+    // on a failed range check.
+    public static KeyValueStatus valueOfLookupArrayUnchecked(final short code) {
+        try {
+            return LookupArrayHolder.code2status[code];
+        } catch(ArrayIndexOutOfBoundsException e) {
+            return UNKNOWN;
+        }
+    }
+
+    //---------------------------------------------------------------------------------------------
+    // Using a big switch, generated from the status definitions. Looking at the bytecode, the
+    // compiler generates a jump table.
+    //
+    // The benchmark shows it's bit slower than direct array lookup, with an outlier value.
+    // Wild guess: large jump tables are transformed into a native hashmap, hence the little
+    // increase in execution time, and the outlier is a collision resolution?
+    //
+    // JitVerifier shows otherwise: C2 does lower it to a jump table, but at 436 bytes of bytecode
+    // the method is too big to be inlined, so there's an extra call compared to the array lookup.
+
+    public static KeyValueStatus valueOfBigSwitch(final short code) {
+        switch (code) {
+            //@@SWITCH_CASES@@
+
+            default: return UNKNOWN;
+        }
+    }
+}
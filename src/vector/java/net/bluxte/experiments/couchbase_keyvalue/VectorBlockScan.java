@@ -0,0 +1,50 @@
+package net.bluxte.experiments.couchbase_keyvalue;
+
+import jdk.incubator.vector.ShortVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * {@link BlockScan} with the Vector API, in the widest vectors of the platform. Loaded reflectively by
+ * {@link BlockScan#preferred()}, so that the rest of the project doesn't depend on the incubator module.
+ */
+final class VectorBlockScan implements BlockScan {
+
+    private static final VectorSpecies<Short> SPECIES = ShortVector.SPECIES_PREFERRED;
+
+    @Override
+    public int or(short[] codes, int from, int to) {
+        int i = from;
+        ShortVector or = ShortVector.zero(SPECIES);
+        for (int upper = from + SPECIES.loopBound(to - from); i < upper; i += SPECIES.length()) {
+            or = or.or(ShortVector.fromArray(SPECIES, codes, i));
+        }
+        int result = or.reduceLanes(VectorOperators.OR);
+        for (; i < to; i++) {
+            result |= codes[i];
+        }
+        return result;
+    }
+
+    @Override
+    public int firstNonZero(short[] codes, int from, int to) {
+        int i = from;
+        for (int upper = from + SPECIES.loopBound(to - from); i < upper; i += SPECIES.length()) {
+            int lane = ShortVector.fromArray(SPECIES, codes, i).compare(VectorOperators.NE, (short) 0).firstTrue();
+            if (lane < SPECIES.length()) {
+                return i + lane;
+            }
+        }
+        for (; i < to; i++) {
+            if (codes[i] != 0) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public String toString() {
+        return "vector " + SPECIES;
+    }
+}